@@ -0,0 +1,33 @@
+package com.ibm.trl.serverlessbench.wrapper;
+
+import org.eclipse.microprofile.config.ConfigProvider;
+
+/*
+ * Reads a setting from an environment variable, falling back to a "serverlessbench.*" configuration
+ * property and then to a default, in the same order as BenchmarkStorageUtil does for credentials.
+ */
+public final class BenchmarkConfig {
+
+    private BenchmarkConfig() {
+    }
+
+    public static String get(String env, String property, String defaultValue) {
+        String value = System.getenv(env);
+        if (value != null) {
+            return value;
+        }
+        return ConfigProvider.getConfig().getOptionalValue(property, String.class).orElse(defaultValue);
+    }
+
+    public static int getInt(String env, String property, int defaultValue) {
+        return Integer.parseInt(get(env, property, Integer.toString(defaultValue)).trim());
+    }
+
+    public static long getLong(String env, String property, long defaultValue) {
+        return Long.parseLong(get(env, property, Long.toString(defaultValue)).trim());
+    }
+
+    public static boolean getBoolean(String env, String property, boolean defaultValue) {
+        return Boolean.parseBoolean(get(env, property, Boolean.toString(defaultValue)).trim());
+    }
+}
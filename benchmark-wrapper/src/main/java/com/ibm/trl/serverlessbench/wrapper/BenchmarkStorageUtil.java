@@ -5,8 +5,10 @@ import com.google.common.base.Supplier;
 import com.google.common.cache.CacheLoader;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
+import jakarta.enterprise.inject.Produces;
 import jakarta.inject.Singleton;
 import org.eclipse.microprofile.config.ConfigProvider;
+import org.jclouds.Constants;
 import org.jclouds.ContextBuilder;
 import org.jclouds.aws.s3.config.AWSS3HttpApiModule;
 import org.jclouds.blobstore.BlobStore;
@@ -14,17 +16,129 @@ import org.jclouds.blobstore.BlobStoreContext;
 import org.jclouds.rest.ConfiguresHttpApi;
 import org.jclouds.s3.S3Client;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 @Singleton
 public class BenchmarkStorageUtil {
 
     private static final Logger LOGGER = Logger.getLogger(BenchmarkStorageUtil.class.getName());
 
+    private static volatile BlobStore sharedBlobStore;
+
+    /*
+     * The BlobStore shared by all benchmarks in this container. Benchmarks receive it by injection,
+     * e.g. as an additional parameter of their StartupEvent observer.
+     */
+    @Produces
+    @Singleton
+    BlobStore blobStore() {
+        return sharedStorage();
+    }
+
+    /*
+     * Builds the shared BlobStore on first use and pre-warms it, so that DNS resolution, the TLS handshake
+     * and the first request to the bucket are paid at startup instead of in the first measured download.
+     */
+    public static BlobStore sharedStorage() {
+        BlobStore blobStore = sharedBlobStore;
+        if (blobStore == null) {
+            synchronized (BenchmarkStorageUtil.class) {
+                blobStore = sharedBlobStore;
+                if (blobStore == null) {
+                    blobStore = setupStorage();
+                    if (BenchmarkConfig.getBoolean("STORAGE_PREWARM", "serverlessbench.storage.prewarm", true)) {
+                        prewarm(blobStore, System.getenv("STORAGE_BUCKET"));
+                    }
+                    sharedBlobStore = blobStore;
+                }
+            }
+        }
+        return blobStore;
+    }
+
+    /*
+     * Opens STORAGE_PREWARM_CONNECTIONS keep-alive connections by checking the bucket concurrently.
+     * Failures are logged only; the benchmark reports them on its first real request.
+     */
+    private static void prewarm(BlobStore blobStore, String bucket) {
+        if (bucket == null) {
+            LOGGER.info("[STORAGE] STORAGE_BUCKET is not set, skipping pre-warming");
+            return;
+        }
+        int connections = BenchmarkConfig.getInt("STORAGE_PREWARM_CONNECTIONS", "serverlessbench.storage.prewarm-connections", 1);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, connections));
+        try {
+            List<Future<Boolean>> checks = new ArrayList<>();
+            for (int i = 0; i < connections; i++) {
+                checks.add(executor.submit(() -> blobStore.containerExists(bucket)));
+            }
+            for (Future<Boolean> check : checks) {
+                if (!check.get()) {
+                    LOGGER.warning("[STORAGE] Bucket " + bucket + " does not exist");
+                    break;
+                }
+            }
+            StartupTimeline.markStorageWarm();
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "[STORAGE] Pre-warming bucket " + bucket + " failed", e);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /*
+     * Maximum number of connections per host of every BlobStore, so concurrent requests beyond it queue for a connection.
+     */
+    public static int poolSize() {
+        return BenchmarkConfig.getInt("STORAGE_POOL_SIZE", "serverlessbench.storage.pool-size", 20);
+    }
+
+    /*
+     * Connection pool settings applied to every BlobStore context. jclouds' default HTTP driver is
+     * built on HttpURLConnection, whose keep-alive cache holds at most http.maxConnections idle
+     * connections per destination, so that limit is raised to the pool size as well.
+     */
+    private static Properties connectionOverrides() {
+        int poolSize = poolSize();
+        String connectTimeout = BenchmarkConfig.get("STORAGE_CONNECT_TIMEOUT", "serverlessbench.storage.connect-timeout", "60000");
+        String readTimeout = BenchmarkConfig.get("STORAGE_READ_TIMEOUT", "serverlessbench.storage.read-timeout", "60000");
+
+        if (System.getProperty("http.maxConnections") == null) {
+            System.setProperty("http.maxConnections", Integer.toString(poolSize));
+        }
+
+        Properties overrides = new Properties();
+        overrides.setProperty(Constants.PROPERTY_MAX_CONNECTIONS_PER_CONTEXT, Integer.toString(poolSize));
+        overrides.setProperty(Constants.PROPERTY_MAX_CONNECTIONS_PER_HOST, Integer.toString(poolSize));
+        overrides.setProperty(Constants.PROPERTY_CONNECTION_TIMEOUT, connectTimeout);
+        overrides.setProperty(Constants.PROPERTY_SO_TIMEOUT, readTimeout);
+        overrides.setProperty(Constants.PROPERTY_CONNECTION_CLOSE_HEADER, "false");
+        return overrides;
+    }
+
     public static BlobStore setupStorage() {
+        String backend = BenchmarkConfig.get("STORAGE_BACKEND", "serverlessbench.storage.backend", "").trim();
+        if (backend.equals("transient") || backend.equals("filesystem")) {
+            return setupLocalStorage(backend);
+        }
+
         String gcpClientEmail = System.getenv("GCP_CLIENT_EMAIL") != null ? System.getenv("GCP_CLIENT_EMAIL") :
                 ConfigProvider.getConfig().getOptionalValue("serverlessbench.gcp-client-email", String.class).orElse("");
         String gcpPrivateKey = System.getenv("GCP_PRIVATE_KEY") != null ? System.getenv("GCP_PRIVATE_KEY") :
@@ -90,7 +204,52 @@ public class BenchmarkStorageUtil {
                     .endpoint(s3Endpoint);
         }
 
-        return contextBuilder.buildView(BlobStoreContext.class).getBlobStore();
+        contextBuilder.overrides(connectionOverrides());
+        BlobStore blobStore = ShapedBlobStore.fromConfig(contextBuilder.buildView(BlobStoreContext.class).getBlobStore());
+        StartupTimeline.markStorageReady();
+        return blobStore;
+    }
+
+    /*
+     * Builds an in-memory ("transient") or directory-backed ("filesystem") BlobStore for running the
+     * benchmarks without network. STORAGE_BUCKET is created in it, and the files below STORAGE_SEED_DIR
+     * are copied into the bucket with their relative paths as keys (e.g. "input/...").
+     */
+    private static BlobStore setupLocalStorage(String backend) {
+        LOGGER.warning("[STORAGE] Using local " + backend + " storage");
+        ContextBuilder contextBuilder = ContextBuilder.newBuilder(backend);
+        if (backend.equals("filesystem")) {
+            Properties overrides = new Properties();
+            overrides.setProperty("jclouds.filesystem.basedir",
+                    BenchmarkConfig.get("STORAGE_BASEDIR", "serverlessbench.storage.basedir", "/tmp/serverlessbench-storage"));
+            contextBuilder.overrides(overrides);
+        }
+        BlobStore blobStore = contextBuilder.buildView(BlobStoreContext.class).getBlobStore();
+
+        String bucket = System.getenv("STORAGE_BUCKET");
+        if (bucket != null) {
+            blobStore.createContainerInLocation(null, bucket);
+            String seedDir = BenchmarkConfig.get("STORAGE_SEED_DIR", "serverlessbench.storage.seed-dir", "");
+            if (!seedDir.isEmpty()) {
+                seed(blobStore, bucket, Paths.get(seedDir));
+            }
+        }
+
+        BlobStore shaped = ShapedBlobStore.fromConfig(blobStore);
+        StartupTimeline.markStorageReady();
+        return shaped;
+    }
+
+    private static void seed(BlobStore blobStore, String bucket, Path dir) {
+        LOGGER.info("[STORAGE] Copying " + dir + " into bucket " + bucket);
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                String key = dir.relativize(file).toString().replace(File.separatorChar, '/');
+                blobStore.putBlob(bucket, blobStore.blobBuilder(key).payload(file.toFile()).build());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to copy " + dir + " into bucket " + bucket, e);
+        }
     }
 
     /*
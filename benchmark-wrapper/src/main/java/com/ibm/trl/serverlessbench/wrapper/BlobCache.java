@@ -0,0 +1,243 @@
+package com.ibm.trl.serverlessbench.wrapper;
+
+import org.jclouds.blobstore.BlobStore;
+import org.jclouds.blobstore.domain.BlobMetadata;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+ * Keeps downloaded blobs in STORAGE_CACHE_DIR so that warm containers do not fetch identical inputs again.
+ * The cache holds at most STORAGE_CACHE_SIZE bytes and evicts the least recently used blobs first;
+ * it is disabled by default (size 0), in which case fetch() always downloads.
+ *
+ * Every fetch revalidates the cached copy against the ETag returned by a metadata (HEAD) request,
+ * whose size is passed on to BlobDownloader on a miss. Concurrent fetches of the same blob share one
+ * download. Cached files are hard-linked into the target path when possible, so callers must not
+ * modify the files they receive.
+ *
+ * Entries are pinned while they are copied outside the cache lock; an entry evicted meanwhile is
+ * deleted by the last copy that releases it.
+ */
+public final class BlobCache {
+
+    private static final Logger LOGGER = Logger.getLogger(BlobCache.class.getName());
+
+    private static final long MAX_BYTES = BenchmarkConfig.getLong("STORAGE_CACHE_SIZE", "serverlessbench.storage.cache.size", 0L);
+    private static final Path DIR = Paths.get(BenchmarkConfig.get("STORAGE_CACHE_DIR", "serverlessbench.storage.cache.dir", "/tmp/serverlessbench-cache"));
+
+    private static final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private static final Map<String, CompletableFuture<Entry>> downloads = new ConcurrentHashMap<>();
+    private static long totalBytes;
+
+    private static final class Entry {
+        final Path path;
+        final String eTag;
+        final long size;
+        int pins;
+        boolean evicted;
+
+        Entry(Path path, String eTag, long size) {
+            this.path = path;
+            this.eTag = eTag;
+            this.size = size;
+        }
+    }
+
+    private BlobCache() {
+    }
+
+    public static boolean enabled() {
+        return MAX_BYTES > 0;
+    }
+
+    /*
+     * Stores the blob at target and returns the download statistics of BlobDownloader, plus "hit"
+     * (the blob was not downloaded by this call) and "bytes_saved".
+     */
+    public static Map<String, Object> fetch(BlobStore blobStore, String bucket, String key, Path target) throws IOException {
+        if (!enabled()) {
+            return result(BlobDownloader.download(blobStore, bucket, key, target), false, 0L);
+        }
+
+        BlobMetadata metadata = blobStore.blobMetadata(bucket, key);
+        if (metadata == null) {
+            throw new FileNotFoundException("ERROR: Bucket or File not found: " + bucket + "/" + key);
+        }
+        String cacheKey = bucket + "/" + key;
+        String eTag = metadata.getETag();
+        Long contentLength = metadata.getContentMetadata().getContentLength();
+        long size = contentLength == null ? -1L : contentLength;
+        if (eTag == null || size < 0 || size > MAX_BYTES) {
+            return result(BlobDownloader.download(blobStore, bucket, key, target, size), false, 0L);
+        }
+
+        Entry cached = lookup(cacheKey, eTag);
+        if (cached != null && copy(cached, target)) {
+            return result(stats(cached.size), true, cached.size);
+        }
+
+        CompletableFuture<Entry> download = new CompletableFuture<>();
+        CompletableFuture<Entry> running = downloads.putIfAbsent(cacheKey + "#" + eTag, download);
+        if (running != null) {
+            Entry shared = join(running);
+            if (pin(shared) && copy(shared, target)) {
+                return result(stats(shared.size), true, shared.size);
+            }
+            return result(BlobDownloader.download(blobStore, bucket, key, target, size), false, 0L);
+        }
+
+        Map<String, Object> stats;
+        try {
+            Files.createDirectories(DIR);
+            Path path = DIR.resolve(UUID.randomUUID().toString());
+            stats = BlobDownloader.download(blobStore, bucket, key, path, size);
+            Entry entry = new Entry(path, eTag, Files.size(path));
+            insert(cacheKey, entry);
+            download.complete(entry);
+            if (!copy(entry, target)) {
+                throw new FileNotFoundException("Cached copy of " + cacheKey + " is gone");
+            }
+        } catch (IOException | RuntimeException e) {
+            download.completeExceptionally(e);
+            throw e;
+        } finally {
+            downloads.remove(cacheKey + "#" + eTag, download);
+        }
+        return result(stats, false, 0L);
+    }
+
+    /*
+     * Returns the pinned entry of cacheKey if its ETag matches, or null.
+     */
+    private static synchronized Entry lookup(String cacheKey, String eTag) {
+        Entry entry = entries.get(cacheKey);
+        if (entry == null) {
+            return null;
+        }
+        if (!Objects.equals(entry.eTag, eTag)) {
+            remove(cacheKey);
+            return null;
+        }
+        entry.pins++;
+        return entry;
+    }
+
+    /*
+     * Adds the entry pinned, so that it cannot be evicted before the caller has copied it.
+     */
+    private static synchronized void insert(String cacheKey, Entry entry) {
+        remove(cacheKey);
+        entry.pins++;
+        entries.put(cacheKey, entry);
+        totalBytes += entry.size;
+
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (totalBytes > MAX_BYTES && eldest.hasNext()) {
+            Entry evicted = eldest.next().getValue();
+            if (evicted == entry) {
+                continue;
+            }
+            eldest.remove();
+            evict(evicted);
+        }
+    }
+
+    private static void remove(String cacheKey) {
+        Entry removed = entries.remove(cacheKey);
+        if (removed != null) {
+            evict(removed);
+        }
+    }
+
+    private static void evict(Entry entry) {
+        totalBytes -= entry.size;
+        entry.evicted = true;
+        if (entry.pins == 0) {
+            delete(entry);
+        }
+    }
+
+    private static synchronized boolean pin(Entry entry) {
+        if (entry.evicted) {
+            return false;
+        }
+        entry.pins++;
+        return true;
+    }
+
+    private static synchronized void unpin(Entry entry) {
+        if (--entry.pins == 0 && entry.evicted) {
+            delete(entry);
+        }
+    }
+
+    /*
+     * Links or copies a pinned entry to target and releases it. The copy runs outside the cache lock,
+     * so it does not hold up lookups of other blobs. Returns false if the cached file is gone.
+     */
+    private static boolean copy(Entry entry, Path target) throws IOException {
+        try {
+            if (!Files.exists(entry.path)) {
+                return false;
+            }
+            Files.deleteIfExists(target);
+            try {
+                Files.createLink(target, entry.path);
+            } catch (IOException | UnsupportedOperationException e) {
+                Files.copy(entry.path, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return true;
+        } finally {
+            unpin(entry);
+        }
+    }
+
+    private static void delete(Entry entry) {
+        try {
+            Files.deleteIfExists(entry.path);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "[STORAGE] Deleting cached blob " + entry.path + " failed", e);
+        }
+    }
+
+    private static Entry join(CompletableFuture<Entry> download) throws IOException {
+        try {
+            return download.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private static Map<String, Object> stats(long size) {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("size", size);
+        stats.put("parts", 0);
+        stats.put("parallelism", 0);
+        stats.put("throughput", 0.0);
+        return stats;
+    }
+
+    private static Map<String, Object> result(Map<String, Object> stats, boolean hit, long bytesSaved) {
+        stats.put("hit", hit);
+        stats.put("bytes_saved", bytesSaved);
+        return stats;
+    }
+}
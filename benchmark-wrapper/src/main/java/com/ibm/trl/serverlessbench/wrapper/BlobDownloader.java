@@ -0,0 +1,182 @@
+package com.ibm.trl.serverlessbench.wrapper;
+
+import com.google.common.io.ByteStreams;
+import org.jclouds.blobstore.BlobStore;
+import org.jclouds.blobstore.domain.Blob;
+import org.jclouds.blobstore.options.GetOptions;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Downloads a blob into a file. Blobs of at least STORAGE_DOWNLOAD_THRESHOLD bytes are split into
+ * parts of STORAGE_DOWNLOAD_PART_SIZE bytes, which up to STORAGE_DOWNLOAD_PARALLELISM virtual threads
+ * fetch with ranged GETs and write at their offsets into the file, which is first set to the final length.
+ * Smaller blobs, and blobs whose size is unknown, are copied from a single stream.
+ *
+ * Without a size hint from the caller, the size is taken from the response of a plain GET. If the blob
+ * turns out to be large, that response supplies the first part and is closed after it, while the other
+ * parts are fetched with ranged GETs, so no metadata (HEAD) request is needed.
+ * STORAGE_DOWNLOAD_RANGED=false downloads every blob as a single stream.
+ */
+public final class BlobDownloader {
+
+    private static final long PART_SIZE = BenchmarkConfig.getLong("STORAGE_DOWNLOAD_PART_SIZE", "serverlessbench.storage.download.part-size", 8L << 20);
+    private static final int PARALLELISM = BenchmarkConfig.getInt("STORAGE_DOWNLOAD_PARALLELISM", "serverlessbench.storage.download.parallelism", 8);
+    private static final long THRESHOLD = BenchmarkConfig.getLong("STORAGE_DOWNLOAD_THRESHOLD", "serverlessbench.storage.download.threshold", 32L << 20);
+    private static final boolean RANGED = BenchmarkConfig.getBoolean("STORAGE_DOWNLOAD_RANGED", "serverlessbench.storage.download.ranged", true);
+
+    private BlobDownloader() {
+    }
+
+    /*
+     * Returns "size", "parts", "parallelism" and "throughput" (MB/s) of the download.
+     */
+    public static Map<String, Object> download(BlobStore blobStore, String bucket, String key, Path target) throws IOException {
+        return download(blobStore, bucket, key, target, -1L);
+    }
+
+    /*
+     * Same as above, with the size of the blob if the caller already knows it (e.g. from a listing
+     * or its own metadata request), or -1.
+     */
+    public static Map<String, Object> download(BlobStore blobStore, String bucket, String key, Path target, long sizeHint) throws IOException {
+        long begin = System.nanoTime();
+        long size = sizeHint;
+        Blob first = null;
+        if (size < 0 || !ranged(size)) {
+            first = blobStore.getBlob(bucket, key);
+            if (first == null) {
+                throw new FileNotFoundException("ERROR: Bucket or File not found: " + bucket + "/" + key);
+            }
+            Long contentLength = first.getMetadata().getContentMetadata().getContentLength();
+            size = contentLength == null ? -1L : contentLength;
+        }
+
+        int parts = 1;
+        int parallelism = 1;
+        if (!ranged(size)) {
+            try (InputStream is = first.getPayload().openStream()) {
+                ChannelTransfer.toFile(is, target);
+            }
+        } else {
+            parts = (int) ((size + PART_SIZE - 1) / PART_SIZE);
+            parallelism = Math.min(PARALLELISM, parts);
+            try {
+                downloadRanges(blobStore, bucket, key, target, size, parts, parallelism, first);
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(target);
+                throw e;
+            }
+        }
+
+        long downloaded = Files.size(target);
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("size", downloaded);
+        stats.put("parts", parts);
+        stats.put("parallelism", parallelism);
+        stats.put("throughput", ChannelTransfer.megabytesPerSecond(downloaded, System.nanoTime() - begin));
+        return stats;
+    }
+
+    private static boolean ranged(long size) {
+        return RANGED && PART_SIZE > 0 && PARALLELISM > 1 && size >= THRESHOLD;
+    }
+
+    /*
+     * If first is not null, it is the response of a plain GET: the calling thread copies the first part
+     * from it and closes it, and parallelism - 1 workers fetch the other parts.
+     */
+    private static void downloadRanges(BlobStore blobStore, String bucket, String key, Path target,
+                                       long size, int parts, int parallelism, Blob first) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(target.toFile(), "rw")) {
+            file.setLength(size);
+            FileChannel channel = file.getChannel();
+            AtomicInteger nextPart = new AtomicInteger(first != null ? 1 : 0);
+
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                int workerCount = first != null ? parallelism - 1 : parallelism;
+                List<Future<Void>> workers = new ArrayList<>(workerCount);
+                for (int i = 0; i < workerCount; i++) {
+                    workers.add(executor.submit(() -> {
+                        int part;
+                        while ((part = nextPart.getAndIncrement()) < parts) {
+                            long offset = part * PART_SIZE;
+                            downloadRange(blobStore, bucket, key, channel, offset, Math.min(PART_SIZE, size - offset));
+                        }
+                        return null;
+                    }));
+                }
+                if (first != null) {
+                    // closing the response before its end drops the rest of the blob
+                    try (InputStream is = first.getPayload().openStream()) {
+                        copyPart(ByteStreams.limit(is, PART_SIZE), bucket, key, channel, 0L, Math.min(PART_SIZE, size));
+                    } catch (IOException | RuntimeException e) {
+                        nextPart.set(parts);
+                        throw e;
+                    }
+                }
+                for (Future<Void> worker : workers) {
+                    await(worker, nextPart, parts);
+                }
+            }
+        }
+    }
+
+    private static void downloadRange(BlobStore blobStore, String bucket, String key,
+                                      FileChannel channel, long offset, long length) throws IOException {
+        Blob blob = blobStore.getBlob(bucket, key, GetOptions.Builder.range(offset, offset + length - 1));
+        if (blob == null) {
+            throw new FileNotFoundException("ERROR: Bucket or File not found: " + bucket + "/" + key);
+        }
+        try (InputStream is = blob.getPayload().openStream()) {
+            copyPart(is, bucket, key, channel, offset, length);
+        }
+    }
+
+    private static void copyPart(InputStream is, String bucket, String key,
+                                 FileChannel channel, long offset, long length) throws IOException {
+        long received = ChannelTransfer.toChannel(is, channel, offset);
+        if (received != length) {
+            throw new IOException("Range " + offset + "-" + (offset + length - 1) + " of " + bucket + "/" + key
+                                  + " returned " + received + " bytes");
+        }
+    }
+
+    /*
+     * Waits for a worker. If it failed, the remaining parts are skipped and its exception is rethrown.
+     * Also used by BlobUploader.
+     */
+    static void await(Future<Void> worker, AtomicInteger nextPart, int parts) throws IOException {
+        try {
+            worker.get();
+        } catch (InterruptedException e) {
+            nextPart.set(parts);
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while transferring parts", e);
+        } catch (ExecutionException e) {
+            nextPart.set(parts);
+            if (e.getCause() instanceof IOException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.ibm.trl.serverlessbench.wrapper;
+
+import org.jclouds.blobstore.BlobStore;
+import org.jclouds.blobstore.domain.PageSet;
+import org.jclouds.blobstore.domain.StorageMetadata;
+import org.jclouds.blobstore.domain.StorageType;
+import org.jclouds.blobstore.options.ListContainerOptions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Lists all blobs below a prefix. BlobStore.list() returns one page (1000 keys on S3) per call;
+ * the following pages are requested with the marker of the previous one until no marker is returned.
+ */
+public final class BlobLister {
+
+    private BlobLister() {
+    }
+
+    public static List<StorageMetadata> list(BlobStore blobStore, String bucket, String prefix) {
+        List<StorageMetadata> blobs = new ArrayList<>();
+        String marker = null;
+        do {
+            ListContainerOptions options = new ListContainerOptions().recursive().prefix(prefix);
+            if (marker != null) {
+                options.afterMarker(marker);
+            }
+            PageSet<? extends StorageMetadata> page = blobStore.list(bucket, options);
+            for (StorageMetadata metadata : page) {
+                if (metadata.getType() == StorageType.BLOB) {
+                    blobs.add(metadata);
+                }
+            }
+            marker = page.getNextMarker();
+        } while (marker != null);
+        return blobs;
+    }
+}
@@ -0,0 +1,132 @@
+package com.ibm.trl.serverlessbench.wrapper;
+
+import com.google.common.io.ByteSource;
+import org.jclouds.blobstore.BlobStore;
+import org.jclouds.blobstore.domain.BlobMetadata;
+import org.jclouds.blobstore.domain.MultipartPart;
+import org.jclouds.blobstore.domain.MultipartUpload;
+import org.jclouds.blobstore.options.PutOptions;
+import org.jclouds.io.Payload;
+import org.jclouds.io.Payloads;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+ * Uploads a file as a blob. Files of at least STORAGE_UPLOAD_THRESHOLD bytes are uploaded as a
+ * multipart upload whose parts of STORAGE_UPLOAD_PART_SIZE bytes are sent by up to
+ * STORAGE_UPLOAD_PARALLELISM virtual threads. The part size is clamped to the limits of the provider.
+ * If a part fails, the multipart upload is aborted so that no orphaned parts are left in the bucket.
+ */
+public final class BlobUploader {
+
+    private static final Logger LOGGER = Logger.getLogger(BlobUploader.class.getName());
+    private static final double nanosecInSec = 1_000_000_000.0;
+
+    private static final long PART_SIZE = BenchmarkConfig.getLong("STORAGE_UPLOAD_PART_SIZE", "serverlessbench.storage.upload.part-size", 16L << 20);
+    static final int PARALLELISM = BenchmarkConfig.getInt("STORAGE_UPLOAD_PARALLELISM", "serverlessbench.storage.upload.parallelism", 8);
+    private static final long THRESHOLD = BenchmarkConfig.getLong("STORAGE_UPLOAD_THRESHOLD", "serverlessbench.storage.upload.threshold", 32L << 20);
+
+    static final int MAX_PARTS = 10_000;
+
+    private BlobUploader() {
+    }
+
+    /*
+     * Returns "size", "parts", "parallelism", "part_times" (the upload time of every part in seconds)
+     * and "throughput" (MB/s).
+     */
+    public static Map<String, Object> upload(BlobStore blobStore, String bucket, String key, Path source) throws IOException {
+        long begin = System.nanoTime();
+        long size = Files.size(source);
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("size", size);
+        if (size < THRESHOLD || PARALLELISM <= 1) {
+            blobStore.putBlob(bucket, blobStore.blobBuilder(key).payload(source.toFile()).contentLength(size).build());
+            long elapsed = System.nanoTime() - begin;
+            stats.put("parts", 1);
+            stats.put("parallelism", 1);
+            stats.put("part_times", List.of(elapsed / nanosecInSec));
+            stats.put("throughput", ChannelTransfer.megabytesPerSecond(size, elapsed));
+            return stats;
+        }
+
+        long partSize = partSize(blobStore, size);
+        int parts = (int) ((size + partSize - 1) / partSize);
+        int parallelism = Math.min(PARALLELISM, parts);
+        double[] partTimes = uploadParts(blobStore, bucket, key, source, size, partSize, parts, parallelism);
+
+        stats.put("parts", parts);
+        stats.put("parallelism", parallelism);
+        stats.put("part_times", Arrays.stream(partTimes).boxed().toList());
+        stats.put("throughput", ChannelTransfer.megabytesPerSecond(size, System.nanoTime() - begin));
+        return stats;
+    }
+
+    static long partSize(BlobStore blobStore, long size) {
+        long partSize = Math.max(PART_SIZE, (size + MAX_PARTS - 1) / MAX_PARTS);
+        partSize = Math.max(partSize, blobStore.getMinimumMultipartPartSize());
+        return Math.min(partSize, blobStore.getMaximumMultipartPartSize());
+    }
+
+    private static double[] uploadParts(BlobStore blobStore, String bucket, String key, Path source,
+                                        long size, long partSize, int parts, int parallelism) throws IOException {
+        BlobMetadata metadata = blobStore.blobBuilder(key).build().getMetadata();
+        MultipartUpload upload = blobStore.initiateMultipartUpload(bucket, metadata, PutOptions.NONE);
+
+        ByteSource file = com.google.common.io.Files.asByteSource(source.toFile());
+        MultipartPart[] uploaded = new MultipartPart[parts];
+        double[] partTimes = new double[parts];
+        AtomicInteger nextPart = new AtomicInteger();
+        try {
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                List<Future<Void>> workers = new ArrayList<>(parallelism);
+                for (int i = 0; i < parallelism; i++) {
+                    workers.add(executor.submit(() -> {
+                        int part;
+                        while ((part = nextPart.getAndIncrement()) < parts) {
+                            long offset = part * partSize;
+                            long length = Math.min(partSize, size - offset);
+                            Payload payload = Payloads.newByteSourcePayload(file.slice(offset, length));
+                            payload.getContentMetadata().setContentLength(length);
+
+                            long begin = System.nanoTime();
+                            uploaded[part] = blobStore.uploadMultipartPart(upload, part + 1, payload);
+                            partTimes[part] = (System.nanoTime() - begin) / nanosecInSec;
+                        }
+                        return null;
+                    }));
+                }
+                for (Future<Void> worker : workers) {
+                    BlobDownloader.await(worker, nextPart, parts);
+                }
+            }
+            blobStore.completeMultipartUpload(upload, Arrays.asList(uploaded));
+        } catch (IOException | RuntimeException e) {
+            abort(blobStore, upload);
+            throw e;
+        }
+        return partTimes;
+    }
+
+    static void abort(BlobStore blobStore, MultipartUpload upload) {
+        try {
+            blobStore.abortMultipartUpload(upload);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "[STORAGE] Aborting multipart upload of " + upload.blobName() + " failed", e);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.ibm.trl.serverlessbench.wrapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * Connects one writing and one reading thread through a fixed-size ring buffer, so that data can be
+ * streamed from a download into an upload without touching disk and with bounded memory.
+ *
+ * Unlike PipedInputStream it neither polls nor checks whether the peer thread is alive; instead either
+ * side can fail() the pipe, which makes the other side throw. The time each side spent waiting for
+ * the other is recorded, which tells whether the producer or the consumer was the bottleneck.
+ */
+public final class BoundedPipe {
+
+    private final byte[] ring;
+    private int head;
+    private int count;
+    private boolean writerClosed;
+    private boolean readerClosed;
+    private Throwable failure;
+
+    private long writerWaitNanos;
+    private long readerWaitNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+
+    private final OutputStream output = new PipeOutputStream();
+    private final InputStream input = new PipeInputStream();
+
+    public BoundedPipe(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.ring = new byte[capacity];
+    }
+
+    public OutputStream output() {
+        return output;
+    }
+
+    public InputStream input() {
+        return input;
+    }
+
+    public int capacity() {
+        return ring.length;
+    }
+
+    /*
+     * Aborts the pipe. Blocked and later calls on either side throw an IOException caused by cause.
+     */
+    public void fail(Throwable cause) {
+        lock.lock();
+        try {
+            if (failure == null) {
+                failure = cause;
+            }
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long writerWaitNanos() {
+        lock.lock();
+        try {
+            return writerWaitNanos;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long readerWaitNanos() {
+        lock.lock();
+        try {
+            return readerWaitNanos;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        if (failure != null) {
+            throw new IOException("Pipe failed", failure);
+        }
+    }
+
+    private class PipeOutputStream extends OutputStream {
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            lock.lock();
+            try {
+                while (len > 0) {
+                    checkFailure();
+                    if (writerClosed) {
+                        throw new IOException("Pipe closed");
+                    }
+                    if (readerClosed) {
+                        throw new IOException("Pipe reader closed");
+                    }
+                    if (count == ring.length) {
+                        long begin = System.nanoTime();
+                        notFull.awaitUninterruptibly();
+                        writerWaitNanos += System.nanoTime() - begin;
+                        continue;
+                    }
+                    int tail = (head + count) % ring.length;
+                    int n = Math.min(len, Math.min(ring.length - count, ring.length - tail));
+                    System.arraycopy(b, off, ring, tail, n);
+                    count += n;
+                    off += n;
+                    len -= n;
+                    notEmpty.signal();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void close() {
+            lock.lock();
+            try {
+                writerClosed = true;
+                notEmpty.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private class PipeInputStream extends InputStream {
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            lock.lock();
+            try {
+                checkFailure();
+                while (count == 0) {
+                    if (writerClosed || readerClosed) {
+                        return -1;
+                    }
+                    long begin = System.nanoTime();
+                    notEmpty.awaitUninterruptibly();
+                    readerWaitNanos += System.nanoTime() - begin;
+                    checkFailure();
+                }
+                int n = Math.min(len, Math.min(count, ring.length - head));
+                System.arraycopy(ring, head, b, off, n);
+                head = (head + n) % ring.length;
+                count -= n;
+                notFull.signal();
+                return n;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public int available() {
+            lock.lock();
+            try {
+                return count;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void close() {
+            lock.lock();
+            try {
+                readerClosed = true;
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.ibm.trl.serverlessbench.wrapper;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/*
+ * The copy path shared by all blob-to-disk transfers, so that their timings are comparable.
+ *
+ * Streams backed by a file (e.g. the filesystem storage backend) are copied with FileChannel.transferFrom,
+ * which lets the kernel move the bytes. Other streams are read into pooled buffers of
+ * STORAGE_TRANSFER_BUFFER bytes and written with positional channel writes; InputStream can only fill
+ * heap arrays, and the JDK copies those through its cached direct buffer in a single step.
+ */
+public final class ChannelTransfer {
+
+    private static final int BUFFER_SIZE = BenchmarkConfig.getInt("STORAGE_TRANSFER_BUFFER", "serverlessbench.storage.transfer-buffer", 256 * 1024);
+    private static final int MAX_POOLED_BUFFERS = 64;
+
+    private static final ConcurrentLinkedQueue<byte[]> buffers = new ConcurrentLinkedQueue<>();
+
+    private ChannelTransfer() {
+    }
+
+    /*
+     * Copies the stream into target, replacing its content, and returns the number of bytes copied.
+     */
+    public static long toFile(InputStream in, Path target) throws IOException {
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+            return toChannel(in, channel, 0L);
+        }
+    }
+
+    /*
+     * Copies the stream into channel starting at position and returns the number of bytes copied.
+     * Does not change the position of channel, so several threads may write disjoint ranges.
+     */
+    public static long toChannel(InputStream in, FileChannel channel, long position) throws IOException {
+        if (in instanceof FileInputStream file) {
+            return transfer(file.getChannel(), channel, position);
+        }
+        byte[] buffer = acquire();
+        try {
+            long written = 0L;
+            int bytesRead;
+            while ((bytesRead = in.read(buffer)) != -1) {
+                ByteBuffer src = ByteBuffer.wrap(buffer, 0, bytesRead);
+                while (src.hasRemaining()) {
+                    written += channel.write(src, position + written);
+                }
+            }
+            return written;
+        } finally {
+            release(buffer);
+        }
+    }
+
+    public static double megabytesPerSecond(long bytes, long nanos) {
+        return nanos <= 0L ? 0.0 : bytes / 1_000_000.0 / (nanos / 1_000_000_000.0);
+    }
+
+    private static long transfer(FileChannel source, FileChannel target, long position) throws IOException {
+        long remaining = source.size() - source.position();
+        long transferred = 0L;
+        while (transferred < remaining) {
+            long n = target.transferFrom(source, position + transferred, remaining - transferred);
+            if (n <= 0L) {
+                break;
+            }
+            transferred += n;
+        }
+        return transferred;
+    }
+
+    private static byte[] acquire() {
+        byte[] buffer = buffers.poll();
+        return buffer != null ? buffer : new byte[BUFFER_SIZE];
+    }
+
+    private static void release(byte[] buffer) {
+        if (buffers.size() < MAX_POOLED_BUFFERS) {
+            buffers.offer(buffer);
+        }
+    }
+}
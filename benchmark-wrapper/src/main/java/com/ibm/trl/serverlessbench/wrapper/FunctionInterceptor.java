@@ -4,57 +4,75 @@ import jakarta.annotation.Priority;
 import jakarta.interceptor.AroundInvoke;
 import jakarta.interceptor.Interceptor;
 import jakarta.interceptor.InvocationContext;
+import jdk.jfr.Recording;
 
-import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
 import java.lang.management.ManagementFactory;
-import java.nio.file.Files;
-import java.nio.file.Paths;
 import java.time.Instant;
 import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.UUID;
 
 @Interceptor
 @Priority(0)
 @BenchmarkWrapper
 public class FunctionInterceptor {
 
-    private static final String coldStartFile = "/tmp/cold_run";
-    private static String containerId;
-
     @AroundInvoke
     public Object logFunctionCall(InvocationContext context) throws Exception {
-        Instant begin = Instant.now();
-        Object result = context.proceed();
-        Instant end = Instant.now();
-
-        File file = new File(coldStartFile);
-        boolean isCold = !file.exists();
-
-        if (isCold) {
-            try (FileWriter fw = new FileWriter(file)) {
-                containerId = UUID.randomUUID().toString().substring(0, 8);
-                fw.write(containerId);
-            } catch (IOException e) {
-                e.printStackTrace();
+        Recording recording = JfrRecorder.requested(context.getParameters()) ? JfrRecorder.start() : null;
+        InvocationEvent event = JfrRecorder.invocationEventsEnabled() ? new InvocationEvent() : null;
+
+        // anything thrown before the recording is handed to stopAndUpload(), Errors included, discards it
+        try {
+            Instant begin = Instant.now();
+            boolean isCold = StartupTimeline.claimColdRun(begin);
+            PhaseTimer phases = PhaseTimer.reset();
+            ResourceUsage usageBegin = ResourceUsage.capture();
+            if (event != null) {
+                event.begin();
             }
-        } else {
-            containerId = new String(Files.readAllBytes(Paths.get(coldStartFile)));
-        }
+            Object result = context.proceed();
+            if (event != null) {
+                event.end();
+            }
+            ResourceUsage usageEnd = ResourceUsage.capture();
+            Instant end = Instant.now();
+
+            long elapsed = java.time.Duration.between(begin, end).toNanos();
+            Map<String, Object> phaseTimes = phases.toMap();
+            if (isCold) {
+                StartupTimeline.markFirstRequestEnd(end);
+            }
+            LatencyMetrics.record(context.getMethod(), isCold, elapsed, phaseTimes);
 
-        Map<String, Object> response = new LinkedHashMap<>();
-        response.put("begin", begin.getEpochSecond() * 1_000_000L + begin.getNano() / 1_000L);
-        response.put("end", end.getEpochSecond() * 1_000_000L + end.getNano() / 1_000L);
-        response.put("results_time", java.time.Duration.between(begin, end).toNanos() / 1_000_000_000.0);
-        response.put("is_cold", isCold);
-        response.put("cold_start_var", System.getenv("cold_start_var"));
-        response.put("container_uptime", ManagementFactory.getRuntimeMXBean().getUptime() / 1_000.0);
-        response.put("container_id", containerId);
-        response.put("result", result);
-
-        return response;
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("begin", StartupTimeline.toMicros(begin));
+            response.put("end", StartupTimeline.toMicros(end));
+            response.put("results_time", elapsed / 1_000_000_000.0);
+            response.put("resources", usageBegin.until(usageEnd));
+            response.put("phases", phaseTimes);
+            response.put("is_cold", isCold);
+            response.put("cold_start_var", System.getenv("cold_start_var"));
+            response.put("container_uptime", ManagementFactory.getRuntimeMXBean().getUptime() / 1_000.0);
+            response.put("container_id", StartupTimeline.containerId());
+            response.put("startup", StartupTimeline.toMap());
+            response.put("result", result);
+
+            if (event != null) {
+                event.function = LatencyMetrics.functionName(context.getMethod());
+                event.cold = isCold;
+                event.commit();
+            }
+            if (recording != null) {
+                Recording stopped = recording;
+                // stopAndUpload() closes the recording itself
+                recording = null;
+                response.put("jfr", JfrRecorder.stopAndUpload(stopped, context.getParameters(), LatencyMetrics.functionName(context.getMethod())));
+            }
+            return response;
+        } finally {
+            if (recording != null) {
+                JfrRecorder.discard(recording);
+            }
+        }
     }
 }
-
@@ -0,0 +1,20 @@
+package com.ibm.trl.serverlessbench.wrapper;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("serverlessbench.Invocation")
+@Label("Benchmark Invocation")
+@Description("One invocation of a @BenchmarkWrapper function")
+@Category("Serverless Benchmark")
+@StackTrace(false)
+class InvocationEvent extends jdk.jfr.Event {
+    @Label("Function")
+    String function;
+
+    @Label("Cold")
+    boolean cold;
+}
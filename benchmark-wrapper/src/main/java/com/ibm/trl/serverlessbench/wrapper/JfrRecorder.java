@@ -0,0 +1,143 @@
+package com.ibm.trl.serverlessbench.wrapper;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.EventType;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import org.jclouds.blobstore.BlobStore;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+ * Starts bounded JDK Flight Recorder recordings on request and uploads them to object storage.
+ * Only one recording runs at a time; requests that arrive while one is running are not recorded.
+ *
+ * The recording is limited by JFR_MAX_SIZE (bytes) and JFR_MAX_DURATION (seconds) and uses the
+ * JFR settings named by JFR_SETTINGS ("default" or "profile").
+ */
+public final class JfrRecorder {
+
+    private static final Logger LOGGER = Logger.getLogger(JfrRecorder.class.getName());
+    private static final double nanosecInSec = 1_000_000_000.0;
+
+    private static final EventType phaseEventType = eventType(PhaseEvent.class);
+    private static final EventType invocationEventType = eventType(InvocationEvent.class);
+    private static final AtomicBoolean recording = new AtomicBoolean();
+
+    private JfrRecorder() {
+    }
+
+    static boolean phaseEventsEnabled() {
+        return phaseEventType != null && phaseEventType.isEnabled();
+    }
+
+    static boolean invocationEventsEnabled() {
+        return invocationEventType != null && invocationEventType.isEnabled();
+    }
+
+    static boolean requested(Object[] parameters) {
+        for (Object parameter : parameters) {
+            if (parameter instanceof RecordingRequest request && request.jfr()) {
+                return true;
+            }
+            if (parameter instanceof Map<?, ?> map && Boolean.parseBoolean(String.valueOf(map.get("jfr")))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Returns the started recording, or null if JFR is unavailable or another recording is running.
+     */
+    static Recording start() {
+        if (invocationEventType == null || !recording.compareAndSet(false, true)) {
+            return null;
+        }
+        try {
+            String settings = BenchmarkConfig.get("JFR_SETTINGS", "serverlessbench.jfr.settings", "profile");
+            Recording r = new Recording(Configuration.getConfiguration(settings));
+            r.setName("serverlessbench");
+            r.enable(PhaseEvent.class);
+            r.enable(InvocationEvent.class);
+            r.setMaxSize(BenchmarkConfig.getLong("JFR_MAX_SIZE", "serverlessbench.jfr.max-size", 64L * 1024 * 1024));
+            r.setDuration(Duration.ofSeconds(BenchmarkConfig.getLong("JFR_MAX_DURATION", "serverlessbench.jfr.max-duration", 60L)));
+            r.start();
+            return r;
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "[JFR] Unable to start recording", e);
+            recording.set(false);
+            return null;
+        }
+    }
+
+    /*
+     * Stops the recording, uploads it as "jfr/<function>-<container id>-<time>.jfr" and returns
+     * what was uploaded. The recording is always closed, even if the upload fails.
+     */
+    static Map<String, Object> stopAndUpload(Recording r, Object[] parameters, String function) {
+        Map<String, Object> retVal = new LinkedHashMap<>();
+        Path file = null;
+        try {
+            if (r.getState() == RecordingState.RUNNING) {
+                r.stop();
+            }
+            file = Files.createTempFile("serverlessbench-", ".jfr");
+            r.dump(file);
+
+            String bucket = bucket(parameters);
+            String key = String.format("jfr/%s-%s-%d.jfr", function, StartupTimeline.containerId(), System.currentTimeMillis());
+            long uploadBegin = System.nanoTime();
+            BlobStore store = BenchmarkStorageUtil.sharedStorage();
+            store.putBlob(bucket, store.blobBuilder(key).payload(file.toFile()).build());
+            long uploadEnd = System.nanoTime();
+
+            retVal.put("bucket", bucket);
+            retVal.put("key", key);
+            retVal.put("size", Files.size(file));
+            retVal.put("upload_time", (uploadEnd - uploadBegin) / nanosecInSec);
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "[JFR] Unable to upload recording", e);
+            retVal.put("message", e.toString());
+        } finally {
+            discard(r);
+            if (file != null) {
+                file.toFile().delete();
+            }
+        }
+        return retVal;
+    }
+
+    static void discard(Recording r) {
+        r.close();
+        recording.set(false);
+    }
+
+    private static String bucket(Object[] parameters) {
+        for (Object parameter : parameters) {
+            if (parameter instanceof RecordingRequest request && request.bucket() != null) {
+                return request.bucket();
+            }
+            if (parameter instanceof Map<?, ?> map && map.get("bucket") != null) {
+                return String.valueOf(map.get("bucket"));
+            }
+        }
+        return System.getenv("STORAGE_BUCKET");
+    }
+
+    private static EventType eventType(Class<? extends jdk.jfr.Event> eventClass) {
+        try {
+            return EventType.getEventType(eventClass);
+        } catch (Throwable t) {
+            LOGGER.info("[JFR] Flight Recorder is not available: " + t);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.ibm.trl.serverlessbench.wrapper;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Fixed-size latency histogram in the style of HdrHistogram: values are recorded in microseconds
+ * into log-linear buckets with 64 sub-buckets per power of two, i.e. a relative error below 1.6%.
+ * Values from 1 us up to about 19 hours are tracked; larger values are clamped.
+ * Recording is lock-free and does not allocate, so it can be fed from concurrent invocations.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF_BITS = SUB_BUCKET_BITS - 1;
+    private static final int SUB_BUCKET_HALF_COUNT = 1 << SUB_BUCKET_HALF_BITS;
+    private static final long MAX_VALUE = (1L << 36) - 1;
+    private static final int BUCKET_COUNT = index(MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder totalCount = new LongAdder();
+    private final LongAdder totalMicros = new LongAdder();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    public void recordNanos(long nanos) {
+        recordMicros(nanos / 1_000L);
+    }
+
+    public void recordMicros(long micros) {
+        long value = Math.min(Math.max(micros, 0L), MAX_VALUE);
+        counts.incrementAndGet(index(value));
+        totalCount.increment();
+        totalMicros.add(value);
+        long max;
+        while (value > (max = maxMicros.get()) && !maxMicros.compareAndSet(max, value)) {
+            // retry until our value is stored or a larger one has been recorded
+        }
+    }
+
+    public long count() {
+        return totalCount.sum();
+    }
+
+    /*
+     * Returns the value at the given percentile (0..100) in microseconds.
+     */
+    public long percentile(double percentile) {
+        long total = count();
+        if (total == 0) {
+            return 0L;
+        }
+        long rank = Math.max(1L, (long) Math.ceil(percentile / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestEquivalentValue(i), maxMicros.get());
+            }
+        }
+        return maxMicros.get();
+    }
+
+    /*
+     * Summary in seconds, consistent with "results_time".
+     */
+    public Map<String, Object> toMap() {
+        long count = count();
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("count", count);
+        summary.put("mean", count == 0 ? 0.0 : totalMicros.sum() / (double) count / 1_000_000.0);
+        summary.put("p50", percentile(50.0) / 1_000_000.0);
+        summary.put("p90", percentile(90.0) / 1_000_000.0);
+        summary.put("p99", percentile(99.0) / 1_000_000.0);
+        summary.put("p999", percentile(99.9) / 1_000_000.0);
+        summary.put("max", maxMicros.get() / 1_000_000.0);
+        return summary;
+    }
+
+    private static int index(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_HALF_BITS;
+        return shift * SUB_BUCKET_HALF_COUNT + (int) (value >>> shift);
+    }
+
+    private static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_HALF_COUNT - 1;
+        long lowest = (long) (index - shift * SUB_BUCKET_HALF_COUNT) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,61 @@
+package com.ibm.trl.serverlessbench.wrapper;
+
+import io.quarkus.funqy.Funq;
+
+import java.lang.reflect.Method;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Aggregates the latencies of all warm invocations handled by this container per function and phase,
+ * so that percentiles can be scraped from the container instead of collecting every sample.
+ * The whole invocation is recorded as phase "total". Cold invocations are only counted.
+ */
+public class LatencyMetrics {
+    public static final String TOTAL = "total";
+
+    private static final Map<String, Map<String, LatencyHistogram>> histograms = new ConcurrentHashMap<>();
+    private static final Map<Method, String> functionNames = new ConcurrentHashMap<>();
+    private static final LongAdder coldInvocations = new LongAdder();
+
+    public static void record(Method method, boolean isCold, long totalNanos, Map<String, Object> phases) {
+        if (isCold) {
+            coldInvocations.increment();
+            return;
+        }
+        Map<String, LatencyHistogram> function = histograms.computeIfAbsent(functionName(method), f -> new ConcurrentHashMap<>());
+        function.computeIfAbsent(TOTAL, p -> new LatencyHistogram()).recordNanos(totalNanos);
+        for (Map.Entry<String, Object> phase : phases.entrySet()) {
+            function.computeIfAbsent(phase.getKey(), p -> new LatencyHistogram())
+                    .recordMicros(Math.round((Double) phase.getValue() * 1_000_000.0));
+        }
+    }
+
+    @Funq("metrics")
+    public Map<String, Object> metrics() {
+        Map<String, Object> functions = new TreeMap<>();
+        for (Map.Entry<String, Map<String, LatencyHistogram>> function : histograms.entrySet()) {
+            Map<String, Object> phases = new TreeMap<>();
+            for (Map.Entry<String, LatencyHistogram> phase : function.getValue().entrySet()) {
+                phases.put(phase.getKey(), phase.getValue().toMap());
+            }
+            functions.put(function.getKey(), phases);
+        }
+
+        Map<String, Object> retVal = new LinkedHashMap<>();
+        retVal.put("container_id", StartupTimeline.containerId());
+        retVal.put("cold_invocations", coldInvocations.sum());
+        retVal.put("functions", functions);
+        return retVal;
+    }
+
+    static String functionName(Method method) {
+        return functionNames.computeIfAbsent(method, m -> {
+            Funq funq = m.getAnnotation(Funq.class);
+            return funq != null && !funq.value().isEmpty() ? funq.value() : m.getName();
+        });
+    }
+}
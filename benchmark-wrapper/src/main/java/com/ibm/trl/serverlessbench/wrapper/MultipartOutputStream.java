@@ -0,0 +1,252 @@
+package com.ibm.trl.serverlessbench.wrapper;
+
+import com.google.common.io.ByteSource;
+import org.jclouds.blobstore.BlobStore;
+import org.jclouds.blobstore.domain.BlobMetadata;
+import org.jclouds.blobstore.domain.MultipartPart;
+import org.jclouds.blobstore.domain.MultipartUpload;
+import org.jclouds.blobstore.options.PutOptions;
+import org.jclouds.io.Payload;
+import org.jclouds.io.Payloads;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/*
+ * Uploads everything written to it as one blob whose size need not be known in advance.
+ * Every STORAGE_UPLOAD_PART_SIZE bytes are sent as a part of a multipart upload on a virtual
+ * thread while the writer continues; once STORAGE_UPLOAD_PARALLELISM parts are in flight the
+ * writer blocks, so at most parallelism + 1 part buffers are held. close() uploads the rest and
+ * completes the upload; a blob smaller than one part is sent with a single PUT instead.
+ *
+ * If writing fails, call abort() instead of close() so that no partial blob or orphaned parts are left:
+ *
+ *   MultipartOutputStream out = new MultipartOutputStream(blobStore, bucket, key);
+ *   try {
+ *       ...
+ *       out.close();
+ *   } catch (IOException | RuntimeException e) {
+ *       out.abort();
+ *       throw e;
+ *   }
+ */
+public final class MultipartOutputStream extends OutputStream {
+
+    private static final double nanosecInSec = 1_000_000_000.0;
+
+    private record Part(MultipartPart part, long nanos) {
+    }
+
+    private final BlobStore blobStore;
+    private final String bucket;
+    private final String key;
+    private final int partSize;
+    private final int parallelism;
+
+    private final Semaphore inFlight;
+    private final ConcurrentLinkedQueue<byte[]> freeBuffers = new ConcurrentLinkedQueue<>();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final List<Future<Part>> parts = new ArrayList<>();
+
+    private MultipartUpload upload;
+    private byte[] buffer;
+    private int count;
+    private long size;
+    private boolean closed;
+
+    private long begin;
+    private long end;
+    private long waitNanos;
+
+    public MultipartOutputStream(BlobStore blobStore, String bucket, String key) {
+        this.blobStore = blobStore;
+        this.bucket = bucket;
+        this.key = key;
+        this.partSize = (int) Math.min(BlobUploader.partSize(blobStore, 0L), Integer.MAX_VALUE - 8);
+        this.parallelism = Math.max(1, BlobUploader.PARALLELISM);
+        this.inFlight = new Semaphore(parallelism);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (begin == 0L) {
+            begin = System.nanoTime();
+        }
+        while (len > 0) {
+            if (buffer == null) {
+                buffer = nextBuffer();
+            }
+            int n = Math.min(len, partSize - count);
+            System.arraycopy(b, off, buffer, count, n);
+            count += n;
+            size += n;
+            off += n;
+            len -= n;
+            if (count == partSize) {
+                sendPart();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (begin == 0L) {
+            begin = System.nanoTime();
+        }
+        try {
+            if (upload == null) {
+                Payload payload = Payloads.newByteSourcePayload(ByteSource.wrap(buffer != null ? buffer : new byte[0]).slice(0, count));
+                payload.getContentMetadata().setContentLength((long) count);
+                blobStore.putBlob(bucket, blobStore.blobBuilder(key).payload(payload).build());
+                parts.add(CompletableFuture.completedFuture(new Part(null, System.nanoTime() - begin)));
+            } else {
+                if (count > 0) {
+                    sendPart();
+                }
+                List<MultipartPart> uploaded = new ArrayList<>(parts.size());
+                for (Future<Part> part : parts) {
+                    uploaded.add(await(part).part());
+                }
+                blobStore.completeMultipartUpload(upload, uploaded);
+            }
+        } catch (IOException | RuntimeException e) {
+            abort();
+            throw e;
+        } finally {
+            executor.close();
+            buffer = null;
+            freeBuffers.clear();
+        }
+        end = System.nanoTime();
+    }
+
+    /*
+     * Cancels the outstanding parts and aborts the multipart upload. Does nothing after a successful close().
+     */
+    public void abort() {
+        if (end != 0L) {
+            return;
+        }
+        closed = true;
+        end = System.nanoTime();
+        executor.shutdownNow();
+        executor.close();
+        if (upload != null) {
+            BlobUploader.abort(blobStore, upload);
+        }
+    }
+
+    /*
+     * Returns "size", "parts", "parallelism", "part_times" (seconds), "time" (seconds from the first
+     * write to the completion), "throughput" (MB/s over that time) and "wait_time", the seconds the
+     * writer was blocked on parts in flight.
+     * Only valid after close().
+     */
+    public Map<String, Object> stats() {
+        List<Double> partTimes = new ArrayList<>(parts.size());
+        for (Future<Part> part : parts) {
+            partTimes.add(part.state() == Future.State.SUCCESS ? part.resultNow().nanos() / nanosecInSec : 0.0);
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("size", size);
+        stats.put("parts", parts.size());
+        stats.put("parallelism", upload == null ? 1 : Math.min(parallelism, parts.size()));
+        stats.put("part_times", partTimes);
+        stats.put("time", (end - begin) / nanosecInSec);
+        stats.put("throughput", ChannelTransfer.megabytesPerSecond(size, end - begin));
+        stats.put("wait_time", waitNanos / nanosecInSec);
+        return stats;
+    }
+
+    private byte[] nextBuffer() {
+        byte[] free = freeBuffers.poll();
+        return free != null ? free : new byte[partSize];
+    }
+
+    private void sendPart() throws IOException {
+        if (upload == null) {
+            BlobMetadata metadata = blobStore.blobBuilder(key).build().getMetadata();
+            upload = blobStore.initiateMultipartUpload(bucket, metadata, PutOptions.NONE);
+        }
+        if (parts.size() == BlobUploader.MAX_PARTS) {
+            throw new IOException("Blob " + bucket + "/" + key + " exceeds " + BlobUploader.MAX_PARTS + " parts of " + partSize + " bytes");
+        }
+
+        long waitBegin = System.nanoTime();
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a part upload");
+        }
+        waitNanos += System.nanoTime() - waitBegin;
+        checkFailedParts();
+
+        byte[] data = buffer;
+        int length = count;
+        int number = parts.size() + 1;
+        buffer = null;
+        count = 0;
+        parts.add(executor.submit(() -> {
+            try {
+                Payload payload = Payloads.newByteSourcePayload(ByteSource.wrap(data).slice(0, length));
+                payload.getContentMetadata().setContentLength((long) length);
+                long partBegin = System.nanoTime();
+                MultipartPart part = blobStore.uploadMultipartPart(upload, number, payload);
+                return new Part(part, System.nanoTime() - partBegin);
+            } finally {
+                freeBuffers.offer(data);
+                inFlight.release();
+            }
+        }));
+    }
+
+    private void checkFailedParts() throws IOException {
+        for (Future<Part> part : parts) {
+            if (part.state() == Future.State.FAILED) {
+                await(part);
+            }
+        }
+    }
+
+    private static Part await(Future<Part> part) throws IOException {
+        try {
+            return part.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a part upload");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+}
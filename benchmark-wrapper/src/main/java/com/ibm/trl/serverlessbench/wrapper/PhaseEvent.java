@@ -0,0 +1,20 @@
+package com.ibm.trl.serverlessbench.wrapper;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("serverlessbench.Phase")
+@Label("Benchmark Phase")
+@Description("A phase recorded with PhaseTimer")
+@Category("Serverless Benchmark")
+@StackTrace(false)
+class PhaseEvent extends jdk.jfr.Event {
+    @Label("Phase")
+    String phase;
+
+    @Label("Depth")
+    int depth;
+}
@@ -0,0 +1,156 @@
+package com.ibm.trl.serverlessbench.wrapper;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * Records the phases of one benchmark invocation in preallocated slots.
+ *
+ * FunctionInterceptor binds a timer to the invoking thread before the benchmark runs
+ * and merges toMap() into its response as "phases". Benchmarks obtain it with current():
+ *
+ *   PhaseTimer phases = PhaseTimer.current();
+ *   phases.begin(PhaseTimer.DOWNLOAD);
+ *   ...
+ *   double downloadTime = phases.end() / nanosecInSec;
+ *
+ * Phases may be nested; a nested phase is reported as "<parent>.<name>". Beginning a phase
+ * with the same name under the same parent again accumulates into the same slot.
+ * Phases nested deeper than MAX_DEPTH are not recorded, and their end() returns 0.
+ * begin() and end() do not allocate unless a Flight Recorder recording captures phase events
+ * (see JfrRecorder), in which case every phase is also committed as a PhaseEvent.
+ * A timer is only used by the thread it is bound to.
+ */
+public final class PhaseTimer {
+    public static final String SETUP = "setup";
+    public static final String DOWNLOAD = "download";
+    public static final String COMPUTE = "compute";
+    public static final String UPLOAD = "upload";
+
+    private static final int MAX_PHASES = 32;
+    private static final int MAX_DEPTH = 8;
+    private static final int NO_SLOT = -1;
+
+    private static final ThreadLocal<PhaseTimer> current = ThreadLocal.withInitial(PhaseTimer::new);
+
+    private final String[] names = new String[MAX_PHASES];
+    private final int[] parents = new int[MAX_PHASES];
+    private final long[] elapsed = new long[MAX_PHASES];
+    private int count;
+
+    private final int[] openSlots = new int[MAX_DEPTH];
+    private final long[] openBegins = new long[MAX_DEPTH];
+    private final PhaseEvent[] openEvents = new PhaseEvent[MAX_DEPTH];
+    private int depth;
+    // begin() calls beyond MAX_DEPTH, ended before the recorded phases
+    private int ignored;
+
+    private PhaseTimer() {
+    }
+
+    public static PhaseTimer current() {
+        return current.get();
+    }
+
+    /*
+     * Called by the interceptor at the beginning of every invocation.
+     */
+    static PhaseTimer reset() {
+        PhaseTimer timer = current.get();
+        timer.count = 0;
+        timer.depth = 0;
+        timer.ignored = 0;
+        Arrays.fill(timer.openEvents, null);
+        return timer;
+    }
+
+    public void begin(String name) {
+        long now = System.nanoTime();
+        if (depth == MAX_DEPTH) {
+            ignored++;
+            return;
+        }
+        openSlots[depth] = slot(name, parent());
+        openBegins[depth] = now;
+        openEvents[depth] = JfrRecorder.phaseEventsEnabled() ? beginEvent(name, depth) : null;
+        depth++;
+    }
+
+    /*
+     * Ends the innermost open phase and returns its duration in nanoseconds.
+     */
+    public long end() {
+        long now = System.nanoTime();
+        if (ignored > 0) {
+            ignored--;
+            return 0L;
+        }
+        if (depth == 0) {
+            return 0L;
+        }
+        depth--;
+        long duration = now - openBegins[depth];
+        int slot = openSlots[depth];
+        if (slot != NO_SLOT) {
+            elapsed[slot] += duration;
+        }
+        PhaseEvent event = openEvents[depth];
+        if (event != null) {
+            event.end();
+            event.commit();
+            openEvents[depth] = null;
+        }
+        return duration;
+    }
+
+    /*
+     * Adds a duration that was measured elsewhere (e.g. on another thread) as a child of the
+     * innermost open phase.
+     */
+    public void add(String name, long nanos) {
+        int slot = slot(name, parent());
+        if (slot != NO_SLOT) {
+            elapsed[slot] += nanos;
+        }
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> phases = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            phases.put(path(i), elapsed[i] / 1_000_000_000.0);
+        }
+        return phases;
+    }
+
+    private static PhaseEvent beginEvent(String name, int depth) {
+        PhaseEvent event = new PhaseEvent();
+        event.phase = name;
+        event.depth = depth;
+        event.begin();
+        return event;
+    }
+
+    private int parent() {
+        return depth == 0 ? NO_SLOT : openSlots[depth - 1];
+    }
+
+    private int slot(String name, int parent) {
+        for (int i = 0; i < count; i++) {
+            if (parents[i] == parent && names[i].equals(name)) {
+                return i;
+            }
+        }
+        if (count == MAX_PHASES) {
+            return NO_SLOT;
+        }
+        names[count] = name;
+        parents[count] = parent;
+        elapsed[count] = 0L;
+        return count++;
+    }
+
+    private String path(int slot) {
+        return parents[slot] == NO_SLOT ? names[slot] : path(parents[slot]) + "." + names[slot];
+    }
+}
@@ -0,0 +1,11 @@
+package com.ibm.trl.serverlessbench.wrapper;
+
+/*
+ * Implemented by benchmark inputs that can ask for a JDK Flight Recorder recording of the invocation.
+ * The recording is uploaded to bucket(), or to STORAGE_BUCKET if the input does not name one.
+ */
+public interface RecordingRequest {
+    boolean jfr();
+
+    String bucket();
+}
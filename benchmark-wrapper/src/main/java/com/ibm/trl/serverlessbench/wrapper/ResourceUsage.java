@@ -0,0 +1,86 @@
+package com.ibm.trl.serverlessbench.wrapper;
+
+import java.lang.management.CompilationMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Snapshot of the JVM resources consumed by the calling thread and the whole process.
+ * The interceptor takes one snapshot before and one after an invocation and reports the difference.
+ * Counters that are not supported by the running VM (e.g. in a native image) are reported as -1.0,
+ * or -1 for "allocated_bytes", so that every counter keeps its JSON type across platforms.
+ *
+ * "cpu_time", "user_time" and "allocated_bytes" cover only the thread that invokes the benchmark.
+ * Work the benchmark hands to other threads, such as the download and upload workers, ForkJoinPool
+ * threads and virtual threads of its parallel modes, is not included; "gc_*" and "jit_time" are
+ * process wide.
+ */
+public final class ResourceUsage {
+
+    private static final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    private static final com.sun.management.ThreadMXBean sunThreadBean =
+            threadBean instanceof com.sun.management.ThreadMXBean ? (com.sun.management.ThreadMXBean) threadBean : null;
+    private static final List<GarbageCollectorMXBean> gcBeans = ManagementFactory.getGarbageCollectorMXBeans();
+    private static final CompilationMXBean compilationBean = ManagementFactory.getCompilationMXBean();
+
+    private static final boolean cpuTimeSupported = threadBean.isCurrentThreadCpuTimeSupported();
+    private static final boolean allocationSupported = sunThreadBean != null && sunThreadBean.isThreadAllocatedMemorySupported();
+    private static final boolean compilationSupported = compilationBean != null && compilationBean.isCompilationTimeMonitoringSupported();
+
+    static {
+        if (cpuTimeSupported && !threadBean.isThreadCpuTimeEnabled()) {
+            threadBean.setThreadCpuTimeEnabled(true);
+        }
+        if (allocationSupported && !sunThreadBean.isThreadAllocatedMemoryEnabled()) {
+            sunThreadBean.setThreadAllocatedMemoryEnabled(true);
+        }
+    }
+
+    private long cpuTime;
+    private long userTime;
+    private long allocatedBytes;
+    private long gcCount;
+    private long gcTime;
+    private long compilationTime;
+
+    private ResourceUsage() {
+    }
+
+    public static ResourceUsage capture() {
+        ResourceUsage usage = new ResourceUsage();
+        usage.cpuTime = cpuTimeSupported ? threadBean.getCurrentThreadCpuTime() : -1L;
+        usage.userTime = cpuTimeSupported ? threadBean.getCurrentThreadUserTime() : -1L;
+        usage.allocatedBytes = allocationSupported ? sunThreadBean.getCurrentThreadAllocatedBytes() : -1L;
+        for (GarbageCollectorMXBean gc : gcBeans) {
+            long count = gc.getCollectionCount();
+            long time = gc.getCollectionTime();
+            if (count > 0) {
+                usage.gcCount += count;
+            }
+            if (time > 0) {
+                usage.gcTime += time;
+            }
+        }
+        usage.compilationTime = compilationSupported ? compilationBean.getTotalCompilationTime() : -1L;
+        return usage;
+    }
+
+    /*
+     * Returns the resources consumed between this snapshot and the later snapshot "end".
+     * Times are in seconds like "results_time".
+     */
+    public Map<String, Object> until(ResourceUsage end) {
+        Map<String, Object> delta = new LinkedHashMap<>();
+        delta.put("cpu_time", cpuTimeSupported ? (end.cpuTime - cpuTime) / 1_000_000_000.0 : -1.0);
+        delta.put("user_time", cpuTimeSupported ? (end.userTime - userTime) / 1_000_000_000.0 : -1.0);
+        delta.put("allocated_bytes", allocationSupported ? end.allocatedBytes - allocatedBytes : -1L);
+        delta.put("gc_count", end.gcCount - gcCount);
+        delta.put("gc_time", (end.gcTime - gcTime) / 1_000.0);
+        delta.put("jit_time", compilationSupported ? (end.compilationTime - compilationTime) / 1_000.0 : -1.0);
+        return delta;
+    }
+}
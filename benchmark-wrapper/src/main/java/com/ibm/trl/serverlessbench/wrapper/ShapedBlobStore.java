@@ -0,0 +1,284 @@
+package com.ibm.trl.serverlessbench.wrapper;
+
+import org.jclouds.blobstore.BlobStore;
+import org.jclouds.blobstore.domain.Blob;
+import org.jclouds.blobstore.domain.BlobMetadata;
+import org.jclouds.blobstore.domain.MultipartPart;
+import org.jclouds.blobstore.domain.MultipartUpload;
+import org.jclouds.blobstore.domain.PageSet;
+import org.jclouds.blobstore.domain.StorageMetadata;
+import org.jclouds.blobstore.domain.internal.BlobImpl;
+import org.jclouds.blobstore.options.CopyOptions;
+import org.jclouds.blobstore.options.GetOptions;
+import org.jclouds.blobstore.options.ListContainerOptions;
+import org.jclouds.blobstore.options.PutOptions;
+import org.jclouds.blobstore.util.ForwardingBlobStore;
+import org.jclouds.io.MutableContentMetadata;
+import org.jclouds.io.Payload;
+import org.jclouds.io.Payloads;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/*
+ * Wraps a BlobStore and shapes every operation like a remote object storage would: a log-normally
+ * distributed latency before each request, a per-connection bandwidth cap for payloads, and a
+ * rate of failed requests. Used with the local backends of BenchmarkStorageUtil to run the storage
+ * benchmarks without network, and to see how their end-to-end time responds to storage performance.
+ *
+ * STORAGE_PROFILE selects a preset ("s3", "gcs", "azure"); STORAGE_LATENCY_MS, STORAGE_LATENCY_SIGMA,
+ * STORAGE_BANDWIDTH_MBPS and STORAGE_ERROR_RATE override single values of it.
+ */
+public class ShapedBlobStore extends ForwardingBlobStore {
+
+    private static final Logger LOGGER = Logger.getLogger(ShapedBlobStore.class.getName());
+
+    /*
+     * Rough first-byte latencies and single-connection throughputs of the cloud object storages
+     * as seen from a function in the same region. Tune them to your own measurements.
+     */
+    private static final Map<String, Profile> PRESETS = Map.of(
+            "s3", new Profile(30.0, 0.5, 90.0, 0.0),
+            "gcs", new Profile(40.0, 0.5, 80.0, 0.0),
+            "azure", new Profile(35.0, 0.6, 60.0, 0.0));
+
+    /*
+     * latencyMs is the median latency and latencySigma the standard deviation of its logarithm.
+     * A bandwidth of 0 MB/s means unlimited.
+     */
+    public record Profile(double latencyMs, double latencySigma, double bandwidthMBps, double errorRate) {
+    }
+
+    private final Profile profile;
+
+    public ShapedBlobStore(BlobStore delegate, Profile profile) {
+        super(delegate);
+        this.profile = profile;
+    }
+
+    /*
+     * Returns the BlobStore shaped by the configured profile, or blobStore itself if none is configured.
+     */
+    public static BlobStore fromConfig(BlobStore blobStore) {
+        String name = BenchmarkConfig.get("STORAGE_PROFILE", "serverlessbench.storage.profile", "").trim().toLowerCase(Locale.ROOT);
+        if (name.isEmpty() || name.equals("none")) {
+            return blobStore;
+        }
+        Profile preset = PRESETS.getOrDefault(name, new Profile(0.0, 0.0, 0.0, 0.0));
+        if (!PRESETS.containsKey(name) && !name.equals("custom")) {
+            throw new IllegalArgumentException("Unknown STORAGE_PROFILE: " + name);
+        }
+        Profile profile = new Profile(
+                getDouble("STORAGE_LATENCY_MS", "serverlessbench.storage.latency-ms", preset.latencyMs()),
+                getDouble("STORAGE_LATENCY_SIGMA", "serverlessbench.storage.latency-sigma", preset.latencySigma()),
+                getDouble("STORAGE_BANDWIDTH_MBPS", "serverlessbench.storage.bandwidth-mbps", preset.bandwidthMBps()),
+                getDouble("STORAGE_ERROR_RATE", "serverlessbench.storage.error-rate", preset.errorRate()));
+        LOGGER.warning("[STORAGE] Shaping storage with profile " + name + ": " + profile);
+        return new ShapedBlobStore(blobStore, profile);
+    }
+
+    public Profile profile() {
+        return profile;
+    }
+
+    @Override
+    public boolean containerExists(String container) {
+        shape("containerExists");
+        return super.containerExists(container);
+    }
+
+    @Override
+    public PageSet<? extends StorageMetadata> list(String container) {
+        shape("list");
+        return super.list(container);
+    }
+
+    @Override
+    public PageSet<? extends StorageMetadata> list(String container, ListContainerOptions options) {
+        shape("list");
+        return super.list(container, options);
+    }
+
+    @Override
+    public boolean blobExists(String container, String name) {
+        shape("blobExists");
+        return super.blobExists(container, name);
+    }
+
+    @Override
+    public BlobMetadata blobMetadata(String container, String name) {
+        shape("blobMetadata");
+        return super.blobMetadata(container, name);
+    }
+
+    @Override
+    public Blob getBlob(String container, String name) {
+        shape("getBlob");
+        return throttle(super.getBlob(container, name));
+    }
+
+    @Override
+    public Blob getBlob(String container, String name, GetOptions options) {
+        shape("getBlob");
+        return throttle(super.getBlob(container, name, options));
+    }
+
+    @Override
+    public String putBlob(String container, Blob blob) {
+        shape("putBlob");
+        transfer(blob.getPayload());
+        return super.putBlob(container, blob);
+    }
+
+    @Override
+    public String putBlob(String container, Blob blob, PutOptions options) {
+        shape("putBlob");
+        transfer(blob.getPayload());
+        return super.putBlob(container, blob, options);
+    }
+
+    @Override
+    public String copyBlob(String fromContainer, String fromName, String toContainer, String toName, CopyOptions options) {
+        shape("copyBlob");
+        return super.copyBlob(fromContainer, fromName, toContainer, toName, options);
+    }
+
+    @Override
+    public void removeBlob(String container, String name) {
+        shape("removeBlob");
+        super.removeBlob(container, name);
+    }
+
+    @Override
+    public MultipartUpload initiateMultipartUpload(String container, BlobMetadata blobMetadata, PutOptions options) {
+        shape("initiateMultipartUpload");
+        return super.initiateMultipartUpload(container, blobMetadata, options);
+    }
+
+    @Override
+    public MultipartPart uploadMultipartPart(MultipartUpload mpu, int partNumber, Payload payload) {
+        shape("uploadMultipartPart");
+        transfer(payload);
+        return super.uploadMultipartPart(mpu, partNumber, payload);
+    }
+
+    @Override
+    public String completeMultipartUpload(MultipartUpload mpu, List<MultipartPart> parts) {
+        shape("completeMultipartUpload");
+        return super.completeMultipartUpload(mpu, parts);
+    }
+
+    /*
+     * Waits for the request latency and fails the request with the configured probability.
+     */
+    private void shape(String operation) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (profile.latencyMs() > 0.0) {
+            double latencyMs = profile.latencyMs() * Math.exp(profile.latencySigma() * random.nextGaussian());
+            sleep((long) (latencyMs * 1_000_000.0));
+        }
+        if (profile.errorRate() > 0.0 && random.nextDouble() < profile.errorRate()) {
+            throw new UncheckedIOException(new IOException("Injected storage error in " + operation));
+        }
+    }
+
+    /*
+     * Waits as long as sending the payload would take at the configured bandwidth.
+     */
+    private void transfer(Payload payload) {
+        Long length = payload == null ? null : payload.getContentMetadata().getContentLength();
+        if (profile.bandwidthMBps() > 0.0 && length != null) {
+            sleep((long) (length / (profile.bandwidthMBps() * 1_000_000.0) * 1_000_000_000.0));
+        }
+    }
+
+    private Blob throttle(Blob blob) {
+        if (blob == null || profile.bandwidthMBps() <= 0.0) {
+            return blob;
+        }
+        MutableContentMetadata metadata = blob.getPayload().getContentMetadata();
+        InputStream stream;
+        try {
+            stream = blob.getPayload().openStream();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Payload payload = Payloads.newInputStreamPayload(new ThrottledInputStream(stream, profile.bandwidthMBps() * 1_000_000.0));
+        payload.setContentMetadata(metadata);
+        // setPayload() on the original blob would release its payload and close the stream wrapped above
+        Blob throttled = new BlobImpl(blob.getMetadata());
+        throttled.setAllHeaders(blob.getAllHeaders());
+        throttled.setPayload(payload);
+        return throttled;
+    }
+
+    private static void sleep(long nanos) {
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static double getDouble(String env, String property, double defaultValue) {
+        return Double.parseDouble(BenchmarkConfig.get(env, property, Double.toString(defaultValue)).trim());
+    }
+
+    /*
+     * Delays reads so that the stream never gets ahead of bytesPerSecond since its first read.
+     */
+    private static class ThrottledInputStream extends FilterInputStream {
+        private final double bytesPerSecond;
+        private long start;
+        private long bytes;
+
+        ThrottledInputStream(InputStream in, double bytesPerSecond) {
+            super(in);
+            this.bytesPerSecond = bytesPerSecond;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                pace(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                pace(n);
+            }
+            return n;
+        }
+
+        private void pace(int n) throws InterruptedIOException {
+            long now = System.nanoTime();
+            if (start == 0L) {
+                start = now;
+            }
+            bytes += n;
+            long due = start + (long) (bytes / bytesPerSecond * 1_000_000_000.0);
+            if (due > now) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(due - now);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+        }
+    }
+}
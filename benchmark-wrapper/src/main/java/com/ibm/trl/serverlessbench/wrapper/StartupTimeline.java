@@ -0,0 +1,90 @@
+package com.ibm.trl.serverlessbench.wrapper;
+
+import io.quarkus.runtime.StartupEvent;
+import jakarta.annotation.Priority;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Singleton;
+
+import java.lang.management.ManagementFactory;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/*
+ * Keeps the cold start state of this container in memory. All timestamps are
+ * microseconds since the epoch (like "begin" and "end" in the response) and are
+ * recorded at most once, so warm invocations only read them.
+ */
+@Singleton
+public class StartupTimeline {
+
+    private static final String containerId = UUID.randomUUID().toString().substring(0, 8);
+    private static final AtomicBoolean coldRun = new AtomicBoolean(true);
+
+    private static final long jvmStart = ManagementFactory.getRuntimeMXBean().getStartTime() * 1_000L;
+    private static volatile long startupEvent;
+    private static volatile long storageReady;
+    private static volatile long storageWarm;
+    private static volatile long firstRequestBegin;
+    private static volatile long firstRequestEnd;
+
+    void onStart(@Observes @Priority(1) StartupEvent ev) {
+        if (startupEvent == 0L) {
+            startupEvent = now();
+        }
+    }
+
+    public static String containerId() {
+        return containerId;
+    }
+
+    /*
+     * Returns true exactly once per container, for the invocation that arrives first.
+     */
+    public static boolean claimColdRun(Instant begin) {
+        if (coldRun.compareAndSet(true, false)) {
+            firstRequestBegin = toMicros(begin);
+            return true;
+        }
+        return false;
+    }
+
+    public static void markFirstRequestEnd(Instant end) {
+        if (firstRequestEnd == 0L) {
+            firstRequestEnd = toMicros(end);
+        }
+    }
+
+    public static void markStorageReady() {
+        if (storageReady == 0L) {
+            storageReady = now();
+        }
+    }
+
+    public static void markStorageWarm() {
+        if (storageWarm == 0L) {
+            storageWarm = now();
+        }
+    }
+
+    public static Map<String, Object> toMap() {
+        Map<String, Object> timeline = new LinkedHashMap<>();
+        timeline.put("jvm_start", jvmStart);
+        timeline.put("startup_event", startupEvent);
+        timeline.put("storage_ready", storageReady);
+        timeline.put("storage_warm", storageWarm);
+        timeline.put("first_request_begin", firstRequestBegin);
+        timeline.put("first_request_end", firstRequestEnd);
+        return timeline;
+    }
+
+    static long toMicros(Instant instant) {
+        return instant.getEpochSecond() * 1_000_000L + instant.getNano() / 1_000L;
+    }
+
+    private static long now() {
+        return toMicros(Instant.now());
+    }
+}
@@ -0,0 +1,99 @@
+package com.ibm.trl.serverlessbench.wrapper;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+class BoundedPipeTest {
+
+    @Test
+    void rejectsNonPositiveCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> new BoundedPipe(0));
+    }
+
+    @Test
+    void streamsMoreThanTheCapacityAcrossThreads() throws Exception {
+        BoundedPipe pipe = new BoundedPipe(1000);
+        byte[] data = new byte[1 << 20];
+        new Random(42).nextBytes(data);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<Void> writer = executor.submit(() -> {
+                // odd chunk sizes so that writes wrap around the end of the ring
+                try (OutputStream out = pipe.output()) {
+                    for (int off = 0; off < data.length; off += 777) {
+                        out.write(data, off, Math.min(777, data.length - off));
+                    }
+                }
+                return null;
+            });
+            ByteArrayOutputStream received = new ByteArrayOutputStream();
+            try (InputStream in = pipe.input()) {
+                in.transferTo(received);
+            }
+            writer.get();
+            assertArrayEquals(data, received.toByteArray());
+        }
+    }
+
+    @Test
+    void readerDrainsTheBufferBeforeEndOfStream() throws IOException {
+        BoundedPipe pipe = new BoundedPipe(8);
+        pipe.output().write(new byte[] {1, 2, 3});
+        pipe.output().close();
+
+        InputStream in = pipe.input();
+        assertEquals(3, in.available());
+        assertEquals(1, in.read());
+        assertEquals(2, in.read(new byte[4], 0, 4));
+        assertEquals(-1, in.read());
+    }
+
+    @Test
+    void failUnblocksTheWriter() throws Exception {
+        BoundedPipe pipe = new BoundedPipe(4);
+        IOException cause = new IOException("upload failed");
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<IOException> writer = executor.submit(() ->
+                    assertThrows(IOException.class, () -> pipe.output().write(new byte[16])));
+            while (pipe.input().available() < pipe.capacity()) {
+                Thread.onSpinWait();
+            }
+            pipe.fail(cause);
+
+            assertSame(cause, writer.get().getCause());
+            assertSame(cause, assertThrows(IOException.class, () -> pipe.input().read()).getCause());
+        }
+    }
+
+    @Test
+    void closedReaderStopsTheWriter() throws Exception {
+        BoundedPipe pipe = new BoundedPipe(4);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<IOException> writer = executor.submit(() ->
+                    assertThrows(IOException.class, () -> pipe.output().write(new byte[16])));
+            while (pipe.input().available() < pipe.capacity()) {
+                Thread.onSpinWait();
+            }
+            pipe.input().close();
+
+            assertEquals("Pipe reader closed", writer.get().getMessage());
+            assertTrue(pipe.writerWaitNanos() > 0);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.ibm.trl.serverlessbench.wrapper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.Test;
+
+class LatencyHistogramTest {
+
+    @Test
+    void emptyHistogramReportsZeros() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        Map<String, Object> summary = histogram.toMap();
+        assertEquals(List.of("count", "mean", "p50", "p90", "p99", "p999", "max"), List.copyOf(summary.keySet()));
+        assertEquals(0L, summary.get("count"));
+        assertEquals(0.0, summary.get("mean"));
+        assertEquals(0L, histogram.percentile(99.0));
+    }
+
+    @Test
+    void smallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 100; micros++) {
+            histogram.recordMicros(micros);
+        }
+
+        assertEquals(50L, histogram.percentile(50.0));
+        assertEquals(90L, histogram.percentile(90.0));
+        assertEquals(100L, histogram.percentile(100.0));
+    }
+
+    @Test
+    void percentilesStayWithinTheRelativeError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        int count = 100_000;
+        for (long micros = 1; micros <= count; micros++) {
+            histogram.recordMicros(micros * 37);
+        }
+
+        for (double percentile : new double[] {50.0, 90.0, 99.0, 99.9}) {
+            double exact = Math.ceil(percentile / 100.0 * count) * 37;
+            double reported = histogram.percentile(percentile);
+            assertTrue(reported >= exact, percentile + ": " + reported + " < " + exact);
+            assertTrue((reported - exact) / exact < 0.016, percentile + ": " + reported + " vs " + exact);
+        }
+        assertEquals(count * 37L, histogram.percentile(100.0));
+    }
+
+    @Test
+    void nanosAreRecordedAsMicrosAndLargeValuesAreClamped() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordNanos(1_500_000L);
+        histogram.recordMicros(-5L);
+        histogram.recordMicros(Long.MAX_VALUE);
+
+        assertEquals(3L, histogram.count());
+        assertEquals(0L, histogram.percentile(1.0));
+        long median = histogram.percentile(50.0);
+        assertTrue(median >= 1_500L && median < 1_500L * 1.016, "p50: " + median);
+        assertEquals((1L << 36) - 1, histogram.percentile(100.0));
+        assertEquals(((1L << 36) - 1) / 1_000_000.0, (double) histogram.toMap().get("max"), 1e-9);
+    }
+
+    @Test
+    void concurrentRecordingLosesNoSamples() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        int threads = 8;
+        int samples = 10_000;
+        try (ExecutorService executor = Executors.newFixedThreadPool(threads)) {
+            for (int t = 0; t < threads; t++) {
+                int offset = t;
+                executor.execute(() -> {
+                    for (int i = 0; i < samples; i++) {
+                        histogram.recordMicros(1_000L + offset);
+                    }
+                });
+            }
+        }
+
+        assertEquals((long) threads * samples, histogram.count());
+        assertEquals(1_000L + threads - 1, histogram.percentile(100.0));
+    }
+}
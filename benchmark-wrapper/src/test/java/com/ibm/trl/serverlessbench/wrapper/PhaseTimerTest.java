@@ -0,0 +1,83 @@
+package com.ibm.trl.serverlessbench.wrapper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class PhaseTimerTest {
+
+    private PhaseTimer phases;
+
+    @BeforeEach
+    void reset() {
+        phases = PhaseTimer.reset();
+    }
+
+    @Test
+    void nestedPhasesAreReportedWithTheirParent() {
+        phases.begin(PhaseTimer.DOWNLOAD);
+        phases.begin("image");
+        phases.end();
+        phases.end();
+        phases.begin(PhaseTimer.COMPUTE);
+        phases.end();
+
+        assertEquals(List.of("download", "download.image", "compute"), List.copyOf(phases.toMap().keySet()));
+    }
+
+    @Test
+    void repeatedPhasesAccumulate() throws InterruptedException {
+        phases.begin(PhaseTimer.COMPUTE);
+        Thread.sleep(5);
+        long first = phases.end();
+        phases.begin(PhaseTimer.COMPUTE);
+        Thread.sleep(5);
+        long second = phases.end();
+
+        Map<String, Object> map = phases.toMap();
+        assertEquals(1, map.size());
+        assertEquals((first + second) / 1_000_000_000.0, (double) map.get("compute"), 1e-9);
+    }
+
+    @Test
+    void addedDurationsBecomeChildrenOfTheOpenPhase() {
+        phases.begin(PhaseTimer.DOWNLOAD);
+        phases.add("part", 2_000_000_000L);
+        phases.add("part", 1_000_000_000L);
+        phases.end();
+
+        assertEquals(3.0, (double) phases.toMap().get("download.part"), 1e-9);
+    }
+
+    @Test
+    void endWithoutBeginIsIgnored() {
+        assertEquals(0L, phases.end());
+        assertTrue(phases.toMap().isEmpty());
+    }
+
+    @Test
+    void phasesBeyondMaxDepthDoNotShiftTheOuterPhases() throws InterruptedException {
+        int levels = 10;
+        for (int i = 0; i < levels; i++) {
+            phases.begin("level" + i);
+        }
+        Thread.sleep(5);
+        for (int i = 0; i < levels - 1; i++) {
+            phases.end();
+        }
+        phases.begin("sibling");
+        phases.end();
+        long outer = phases.end();
+
+        Map<String, Object> map = phases.toMap();
+        assertEquals(outer / 1_000_000_000.0, (double) map.get("level0"), 1e-9);
+        assertTrue(map.containsKey("level0.sibling"));
+        assertTrue(map.keySet().stream().noneMatch(path -> path.endsWith("level8") || path.endsWith("level9")));
+        assertEquals(0L, phases.end());
+    }
+}
@@ -15,8 +15,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.stream.Stream;
 
-import com.ibm.trl.serverlessbench.wrapper.BenchmarkStorageUtil;
 import com.ibm.trl.serverlessbench.wrapper.BenchmarkWrapper;
+import com.ibm.trl.serverlessbench.wrapper.PhaseTimer;
+import com.ibm.trl.serverlessbench.wrapper.RecordingRequest;
 
 import io.quarkus.funqy.Funq;
 import io.quarkus.runtime.StartupEvent;
@@ -31,18 +32,29 @@ public class ClockSynchronization {
     private static BlobStore blobStore;
     private static String bucket;
 
-    void onStart(@Observes StartupEvent ev) {
-        blobStore = BenchmarkStorageUtil.setupStorage();
+    void onStart(@Observes StartupEvent ev, BlobStore sharedBlobStore) {
+        blobStore = sharedBlobStore;
         bucket = System.getenv("STORAGE_BUCKET");
     }
 
-    public static class FunInput {
+    public static class FunInput implements RecordingRequest {
         public String request_id;
         public String server_address;
         public int server_port;
         public int repetitions;
         public String bucket;
         public boolean debug;
+        public boolean jfr;
+
+        @Override
+        public boolean jfr() {
+            return jfr;
+        }
+
+        @Override
+        public String bucket() {
+            return bucket;
+        }
     }
 
     @Funq("clock-synchronization")
@@ -64,7 +76,8 @@ public class ClockSynchronization {
         log.info("Starting communication with " + address + ":" + port);
         long i = 0;
         
-        long processTimeBegin = System.nanoTime();
+        PhaseTimer phases = PhaseTimer.current();
+        phases.begin(PhaseTimer.COMPUTE);
 
         try {
             DatagramSocket sendSocket = new DatagramSocket(null);
@@ -163,9 +176,9 @@ public class ClockSynchronization {
         } catch (SocketException e) {
             e.printStackTrace();
         }
-        long processTimeEnd = System.nanoTime();
+        double process_time = phases.end() / nanosecInSec;
 
-        retVal.put("measurement", (processTimeEnd - processTimeBegin) / nanosecInSec);
+        retVal.put("measurement", process_time);
         retVal.put("output", key);
 
         log.debug("retVal.measurement="+retVal.get("measurement"));
@@ -1,25 +1,46 @@
 package com.ibm.trl.serverlessbench;
 
-import com.ibm.trl.serverlessbench.wrapper.BenchmarkStorageUtil;
 import com.ibm.trl.serverlessbench.wrapper.BenchmarkWrapper;
+import com.ibm.trl.serverlessbench.wrapper.BlobCache;
+import com.ibm.trl.serverlessbench.wrapper.BlobLister;
+import com.ibm.trl.serverlessbench.wrapper.BlobUploader;
+import com.ibm.trl.serverlessbench.wrapper.BoundedPipe;
+import com.ibm.trl.serverlessbench.wrapper.ChannelTransfer;
+import com.ibm.trl.serverlessbench.wrapper.MultipartOutputStream;
+import com.ibm.trl.serverlessbench.wrapper.PhaseTimer;
+import com.ibm.trl.serverlessbench.wrapper.RecordingRequest;
 import io.quarkus.runtime.StartupEvent;
 import jakarta.enterprise.event.Observes;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
 import org.jboss.logging.Logger;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -27,9 +48,7 @@ import java.nio.file.Files;
 
 import org.jclouds.blobstore.BlobStore;
 import org.jclouds.blobstore.domain.Blob;
-import org.jclouds.blobstore.domain.PageSet;
 import org.jclouds.blobstore.domain.StorageMetadata;
-import org.jclouds.blobstore.options.ListContainerOptions;
 
 import io.quarkus.funqy.Funq;
 
@@ -37,20 +56,47 @@ public class Compress {
     private static final double nanosecInSec = 1_000_000_000.0;
 
     private static final Logger log = Logger.getLogger(Compress.class);
+    private static final int DEFAULT_PARALLELISM = 16;
+    private static final int DEFAULT_LEVEL = 6;
+    private static final int PIPE_SIZE = 1024 * 1024;
+    private static final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
     private static BlobStore blobStore;
     private static String bucket;
 
-    void onStart(@Observes StartupEvent ev) {
-        blobStore = BenchmarkStorageUtil.setupStorage();
+    void onStart(@Observes StartupEvent ev, BlobStore sharedBlobStore) {
+        blobStore = sharedBlobStore;
         bucket = System.getenv("STORAGE_BUCKET");
     }
 
     private File downloadPath = null;
 
-    public static class FunInput {
+    public static class FunInput implements RecordingRequest {
         public String input_key;
         public String bucket;
         public boolean debug;
+        public boolean jfr;
+        // number of files downloaded concurrently
+        public int parallelism;
+        // "file" (default) stages the input in /tmp, "stream" zips the blobs straight into the upload
+        public String mode;
+        // deflate level 0-9 (default 6), and in file mode "serial" (default) or "parallel" compression
+        // on threads threads (default: available processors)
+        public Integer level;
+        public String engine;
+        public int threads;
+        // "auto" stores, fast-deflates or high-deflates each entry depending on a sample of it
+        public String strategy;
+
+        @Override
+        public boolean jfr() {
+            return jfr;
+        }
+
+        @Override
+        public String bucket() {
+            return bucket;
+        }
     }
 
     @Funq
@@ -61,27 +107,38 @@ public class Compress {
             retVal.put("message", "ERROR: Compress unable to run. input_key and bucket need to be set.");
             return retVal;
         }
+        if (input.level != null && (input.level < 0 || input.level > 9)) {
+            retVal.put("message", "ERROR: Compress unable to run. level needs to be between 0 and 9.");
+            return retVal;
+        }
         if (input.bucket == null)
             input.bucket = bucket;
 
+        if ("stream".equals(input.mode)) {
+            return streamDirectory(input, retVal);
+        }
+
         String uuid = UUID.randomUUID().toString().substring(0, 8);
 
         downloadPath=new File(String.format("/tmp/%s-%s", input.input_key, uuid));
         downloadPath.mkdirs();
-        long downloadStartTime = System.nanoTime();
-        downloadDirectory(input.bucket, input.input_key, downloadPath.toString());
-        long downloadStopTime = System.nanoTime();
+        PhaseTimer phases = PhaseTimer.current();
+        phases.begin(PhaseTimer.DOWNLOAD);
+        Map<String, Object> download = downloadDirectory(input.bucket, input.input_key, downloadPath.toString(),
+                                                         input.parallelism > 0 ? input.parallelism : DEFAULT_PARALLELISM);
+        double downloadTime = phases.end() / nanosecInSec;
         long downloadSize = parseDirectory(new File(downloadPath.getPath() + "/" + input.input_key));
 
-        long compressStartTime = System.nanoTime();
+        phases.begin(PhaseTimer.COMPUTE);
         File destinationFile = new File(String.format("%s/%s-%s.zip", downloadPath.toString(), input.input_key, uuid));
-        zipDir(destinationFile, new File(downloadPath.getPath() + "/" + input.input_key));
-        long compressStopTime = System.nanoTime();
+        StrategyStats strategies = strategies(input);
+        Map<String, Object> compression = compressDirectory(destinationFile, new File(downloadPath.getPath() + "/" + input.input_key), input, strategies);
+        double compressTime = phases.end() / nanosecInSec;
 
-        long uploadStartTime = System.nanoTime();
+        phases.begin(PhaseTimer.UPLOAD);
         String archiveName = String.format("%s-%s.zip", input.input_key, uuid);
-        uploadFile(input.bucket, "output/" + archiveName, destinationFile.toString());
-        long uploadStopTime = System.nanoTime();
+        Map<String, Object> upload = uploadFile(input.bucket, "output/" + archiveName, destinationFile.toString());
+        double uploadTime = phases.end() / nanosecInSec;
         long compressSize = destinationFile.length();
 
         try {
@@ -98,61 +155,304 @@ public class Compress {
         }
 
         retVal.put("input_key", input.input_key);
-        retVal.put("measurement", Map.of("download_time", (downloadStopTime - downloadStartTime) / nanosecInSec,
-                                        "compress_time", (compressStopTime - compressStartTime) / nanosecInSec,
-                                        "upload_time", (uploadStopTime - uploadStartTime) / nanosecInSec,
+        retVal.put("download", Map.of("files", download.get("files"),
+                                      "bytes", download.get("bytes"),
+                                      "parallelism", download.get("parallelism"),
+                                      "throughput", download.get("throughput")));
+        retVal.put("cache", Map.of("hits", download.get("hits"),
+                                   "misses", download.get("misses"),
+                                   "bytes_saved", download.get("bytes_saved")));
+        retVal.put("compression", compression);
+        if (strategies != null)
+            retVal.put("strategies", strategies.toMap());
+        retVal.put("measurement", Map.of("download_time", downloadTime,
+                                        "compress_time", compressTime,
+                                        "upload_time", uploadTime,
                                         "download_size", Long.toString(downloadSize),
-                                        "compress_size", Long.toString(compressSize)));
+                                        "compress_size", Long.toString(compressSize),
+                                        "upload_parts", upload.get("parts"),
+                                        "upload_part_times", upload.get("part_times"),
+                                        "download_throughput", ChannelTransfer.megabytesPerSecond(downloadSize, (long) (downloadTime * nanosecInSec)),
+                                        "upload_throughput", upload.get("throughput")));
+        return retVal;
+    }
+
+    private record Fetch(String key, BoundedPipe pipe) {
+    }
+
+    /*
+     * Stream mode: each blob is zipped as it arrives and the archive is uploaded as it is produced,
+     * so nothing is written to /tmp and the latency approaches the slowest of download, compression
+     * and upload instead of their sum. Up to parallelism blobs are fetched ahead of the one being
+     * compressed, each into a BoundedPipe of PIPE_SIZE bytes, so that memory is bounded by these pipes
+     * plus the part buffers of the MultipartOutputStream.
+     */
+    private Map<String, Object> streamDirectory(FunInput input, Map<String, Object> retVal) throws Exception {
+        String prefix = "input/" + input.input_key;
+        String archiveName = String.format("%s-%s.zip", input.input_key, UUID.randomUUID().toString().substring(0, 8));
+        int parallelism = input.parallelism > 0 ? input.parallelism : DEFAULT_PARALLELISM;
+        log.debug("Streaming " + prefix + " to output/" + archiveName + " in bucket " + input.bucket + ".");
+
+        long begin = System.nanoTime();
+        List<StorageMetadata> blobs = new ArrayList<>();
+        for (StorageMetadata metadata : BlobLister.list(blobStore, input.bucket, prefix)) {
+            if (!isHidden(metadata.getName().substring(prefix.length()))) {
+                blobs.add(metadata);
+            }
+        }
+
+        LongAdder downloadSize = new LongAdder();
+        AtomicLong downloadEnd = new AtomicLong(begin);
+        long downloadWaitNanos = 0;
+        ArrayDeque<Fetch> fetches = new ArrayDeque<>();
+        StrategyStats strategies = strategies(input);
+        EntryStrategy strategy = null;
+        MultipartOutputStream out = new MultipartOutputStream(blobStore, input.bucket, "output/" + archiveName);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            try {
+                ZipOutputStream zipOut = new ZipOutputStream(out);
+                zipOut.setLevel(level(input));
+                int next = 0;
+                while (next < blobs.size() || !fetches.isEmpty()) {
+                    while (next < blobs.size() && fetches.size() < parallelism) {
+                        fetches.add(fetch(executor, input.bucket, blobs.get(next++).getName(), downloadSize, downloadEnd));
+                    }
+                    Fetch fetch = fetches.peek();
+                    String relativePath = fetch.key().substring(prefix.length());
+                    ZipEntry zipEntry = new ZipEntry(input.input_key + (relativePath.startsWith("/") ? "" : "/") + relativePath);
+                    long entryBegin = System.nanoTime();
+                    try (InputStream is = fetch.pipe().input()) {
+                        if (strategies == null) {
+                            zipOut.putNextEntry(zipEntry);
+                            is.transferTo(zipOut);
+                        } else {
+                            // the sizes of a STORED entry must be known up front, so here it is deflated at level 0
+                            byte[] sample = is.readNBytes(EntryStrategy.SAMPLE_SIZE);
+                            strategy = EntryStrategy.choose(sample, sample.length);
+                            zipOut.setLevel(strategy.level);
+                            zipOut.putNextEntry(zipEntry);
+                            zipOut.write(sample);
+                            is.transferTo(zipOut);
+                        }
+                    }
+                    zipOut.closeEntry();
+                    downloadWaitNanos += fetch.pipe().readerWaitNanos();
+                    if (strategies != null)
+                        strategies.add(strategy, zipEntry.getSize(), zipEntry.getCompressedSize(),
+                                       System.nanoTime() - entryBegin - fetch.pipe().readerWaitNanos());
+                    fetches.poll();
+                }
+                // finishes the archive and completes the upload
+                zipOut.close();
+            } catch (Exception e) {
+                for (Fetch fetch : fetches) {
+                    fetch.pipe().fail(e);
+                }
+                out.abort();
+                throw e;
+            }
+        }
+        long end = System.nanoTime();
+
+        Map<String, Object> upload = out.stats();
+        long downloadNanos = downloadEnd.get() - begin;
+        long uploadWaitNanos = (long) ((Double) upload.get("wait_time") * nanosecInSec);
+        long compressNanos = Math.max(0L, end - begin - downloadWaitNanos - uploadWaitNanos);
+        PhaseTimer phases = PhaseTimer.current();
+        phases.add(PhaseTimer.DOWNLOAD, downloadNanos);
+        phases.add(PhaseTimer.COMPUTE, compressNanos);
+        phases.add(PhaseTimer.UPLOAD, (long) ((Double) upload.get("time") * nanosecInSec));
+
+        try {
+            if (!input.debug)
+                deleteFile(input.bucket, "output/" + archiveName);
+        } catch (Exception e) {
+            log.error("Exception deleting from cloud storage: " + e);
+        }
+
+        // compress_time is the time the zipping thread was neither waiting for downloads nor for uploads
+        Map<String, Object> measurement = new LinkedHashMap<>();
+        measurement.put("download_time", downloadNanos / nanosecInSec);
+        measurement.put("compress_time", compressNanos / nanosecInSec);
+        measurement.put("upload_time", upload.get("time"));
+        measurement.put("stream_time", (end - begin) / nanosecInSec);
+        measurement.put("download_size", Long.toString(downloadSize.sum()));
+        measurement.put("compress_size", Long.toString((Long) upload.get("size")));
+        measurement.put("download_wait_time", downloadWaitNanos / nanosecInSec);
+        measurement.put("upload_wait_time", upload.get("wait_time"));
+        measurement.put("upload_parts", upload.get("parts"));
+        measurement.put("upload_part_times", upload.get("part_times"));
+        measurement.put("download_throughput", ChannelTransfer.megabytesPerSecond(downloadSize.sum(), downloadNanos));
+        measurement.put("upload_throughput", upload.get("throughput"));
+
+        retVal.put("input_key", input.input_key);
+        retVal.put("download", Map.of("files", blobs.size(),
+                                      "bytes", downloadSize.sum(),
+                                      "parallelism", parallelism));
+        if (strategies != null)
+            retVal.put("strategies", strategies.toMap());
+        retVal.put("measurement", measurement);
         return retVal;
     }
 
+    /*
+     * Starts copying a blob into a new pipe. The pipe is failed before it is closed,
+     * so that the reader cannot mistake a broken download for the end of the blob.
+     */
+    private Fetch fetch(ExecutorService executor, String bucket, String key, LongAdder bytes, AtomicLong end) {
+        BoundedPipe pipe = new BoundedPipe(PIPE_SIZE);
+        executor.execute(() -> {
+            OutputStream os = pipe.output();
+            try {
+                Blob blob = blobStore.getBlob(bucket, key);
+                if (blob == null)
+                    throw new FileNotFoundException("ERROR: Bucket or File not found: " + bucket + "/" + key);
+                try (InputStream is = blob.getPayload().openStream()) {
+                    bytes.add(is.transferTo(os));
+                }
+                os.close();
+            } catch (Throwable t) {
+                pipe.fail(t);
+            }
+            end.accumulateAndGet(System.nanoTime(), Math::max);
+        });
+        return new Fetch(key, pipe);
+    }
+
+    /*
+     * Matches the files zipFile() skips on disk: those in or below a directory starting with a dot.
+     */
+    private static boolean isHidden(String relativePath) {
+        for (String name : relativePath.split("/")) {
+            if (name.startsWith(".")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private void deleteFile(String bucket, String key) {
         log.debug("Deleting "+key+" from bucket "+bucket+".");
         blobStore.removeBlob(bucket, key);
     }
 
 
-    private void uploadFile(String bucket, String key, String filePath) {
+    private Map<String, Object> uploadFile(String bucket, String key, String filePath) throws IOException {
         log.debug("Uploading "+filePath+" as "+key+" to bucket "+bucket+".");
-        blobStore.putBlob(bucket, blobStore.blobBuilder(key).payload(new File(filePath)).build());
+        return BlobUploader.upload(blobStore, bucket, key, Paths.get(filePath));
     }
 
-    private void downloadFile(String bucket, String key, String filePath) throws Exception {
+    private Map<String, Object> downloadFile(String bucket, String key, String filePath) throws Exception {
         log.debug("Downloading "+filePath+" as "+key+" from bucket "+bucket+".");
         File theFile = new File(filePath);
         File theDir = theFile.getParentFile();
         if (!theDir.exists()) {
             theDir.mkdirs();
         }
+        return BlobCache.fetch(blobStore, bucket, key, theFile.toPath());
+    }
 
-        Blob blob = blobStore.getBlob(bucket, key);
-        if (blob == null) {
-            throw new FileNotFoundException("Blob " + key + " not found in container " + bucket);
-        }
+    /*
+     * Downloads all blobs below input/<prefix> on up to parallelism virtual threads, each of which
+     * takes the next file from the list until all are done. With many small files the time is
+     * dominated by the per-request latency, which the concurrent requests overlap.
+     * Returns the file count, bytes and throughput together with the cache statistics summed over all files.
+     */
+    private Map<String, Object> downloadDirectory(String bucket, String prefix, String dirPath, int parallelism) throws Exception {
+        log.debug("Downloading " + dirPath + " with prefix input/" + prefix + " from bucket " + bucket + ".");
 
-        try (InputStream is = blob.getPayload().openStream();
-             OutputStream os = new FileOutputStream(theFile)) {
-            byte[] buffer = new byte[8192];
-            int bytesRead;
-            while ((bytesRead = is.read(buffer)) != -1) {
-                os.write(buffer, 0, bytesRead);
+        long begin = System.nanoTime();
+        List<StorageMetadata> blobs = BlobLister.list(blobStore, bucket, "input/" + prefix);
+        AtomicInteger nextFile = new AtomicInteger();
+        AtomicInteger hits = new AtomicInteger();
+        LongAdder bytes = new LongAdder();
+        LongAdder bytesSaved = new LongAdder();
+        int workers = Math.max(1, Math.min(parallelism, blobs.size()));
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<Void>> futures = new ArrayList<>(workers);
+            for (int i = 0; i < workers; i++) {
+                futures.add(executor.submit(() -> {
+                    int file;
+                    while ((file = nextFile.getAndIncrement()) < blobs.size()) {
+                        String blobName = blobs.get(file).getName();
+                        String relativePath = blobName.substring(("input/" + prefix).length());
+                        Path filePath = Paths.get(dirPath, prefix, relativePath);
+
+                        Map<String, Object> download = downloadFile(bucket, blobName, filePath.toString());
+                        if ((Boolean) download.get("hit")) {
+                            hits.incrementAndGet();
+                        }
+                        bytes.add((Long) download.get("size"));
+                        bytesSaved.add((Long) download.get("bytes_saved"));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    // skip the files not yet started and report the first failure
+                    nextFile.set(blobs.size());
+                    throw e.getCause() instanceof Exception cause ? cause : e;
+                }
             }
         }
+        long elapsed = System.nanoTime() - begin;
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("files", blobs.size());
+        stats.put("bytes", bytes.sum());
+        stats.put("parallelism", workers);
+        stats.put("throughput", ChannelTransfer.megabytesPerSecond(bytes.sum(), elapsed));
+        stats.put("hits", hits.get());
+        stats.put("misses", blobs.size() - hits.get());
+        stats.put("bytes_saved", bytesSaved.sum());
+        return stats;
     }
 
-    private void downloadDirectory(String bucket, String prefix, String dirPath) throws Exception {
-        log.debug("Downloading " + dirPath + " with prefix input/" + prefix + " from bucket " + bucket + ".");
-
-        PageSet<? extends StorageMetadata> blobs = blobStore.list(bucket,
-                new ListContainerOptions().recursive().prefix("input/" + prefix));
+    private static int level(FunInput input) {
+        return input.level != null ? input.level : DEFAULT_LEVEL;
+    }
 
-        for (StorageMetadata metadata : blobs) {
-            String blobName = metadata.getName();
-            String relativePath = blobName.substring(("input/" + prefix).length());
-            Path filePath = Paths.get(dirPath, prefix, relativePath);
+    // null unless the compression is chosen per entry
+    private static StrategyStats strategies(FunInput input) {
+        return "auto".equals(input.strategy) ? new StrategyStats() : null;
+    }
 
-            downloadFile(bucket, blobName, filePath.toString());
+    /*
+     * Returns the statistics of the engine; for the serial one, the speedup is the CPU time of
+     * the compressing thread over the elapsed time and thus at most 1.
+     */
+    private Map<String, Object> compressDirectory(File dstFile, File srcDir, FunInput input, StrategyStats strategies) throws IOException {
+        if ("parallel".equals(input.engine)) {
+            int threads = input.threads > 0 ? input.threads : Runtime.getRuntime().availableProcessors();
+            // a scratch directory per request, since concurrent requests share this instance
+            Path scratchDir = Files.createTempDirectory("compress-scratch-");
+            try {
+                return ParallelZip.zip(dstFile, srcDir, scratchDir, level(input), threads, strategies);
+            } finally {
+                deleteLocalDir(scratchDir.toFile());
+            }
         }
+
+        long cpuBegin = threadBean.getCurrentThreadCpuTime();
+        long begin = System.nanoTime();
+        zipDir(dstFile, srcDir, level(input), strategies);
+        double compressTime = (System.nanoTime() - begin) / nanosecInSec;
+        double cpuTime = (threadBean.getCurrentThreadCpuTime() - cpuBegin) / nanosecInSec;
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("engine", "serial");
+        stats.put("level", strategies == null ? level(input) : "auto");
+        stats.put("threads", 1);
+        stats.put("thread_cpu_times", List.of(cpuTime));
+        stats.put("cpu_time", cpuTime);
+        stats.put("compress_time", compressTime);
+        stats.put("merge_time", 0.0);
+        stats.put("speedup", compressTime > 0.0 ? cpuTime / compressTime : 0.0);
+        return stats;
     }
 
     public long parseDirectory(File dir) {
@@ -171,16 +471,35 @@ public class Compress {
         return size;
     }
 
-    public void zipDir(File dstFile, File srcDir) throws IOException {
+    /*
+     * strategies is null unless each entry's compression is chosen by EntryStrategy.
+     */
+    public void zipDir(File dstFile, File srcDir, int level, StrategyStats strategies) throws IOException {
         log.debug("in zipDir(): source directory: " + srcDir + " destination file: " + dstFile);
-        try (FileOutputStream fos = new FileOutputStream(dstFile);
-             ZipOutputStream zipOut = new ZipOutputStream(fos)) {
+        if (strategies == null) {
+            try (FileOutputStream fos = new FileOutputStream(dstFile);
+                 ZipOutputStream zipOut = new ZipOutputStream(fos)) {
+                zipOut.setLevel(level);
 
-            zipFile(srcDir, srcDir.getName(), zipOut, dstFile.getName());
+                zipFile(srcDir, srcDir.getName(), dstFile.getName(), (file, name) -> zipFile(file, name, zipOut));
+            }
+            return;
+        }
+
+        // writing to a file lets ZipArchiveOutputStream fill in the CRC and sizes of a STORED entry
+        // after its data, so each file is read only once besides the sample
+        try (ZipArchiveOutputStream zipOut = new ZipArchiveOutputStream(dstFile)) {
+            zipOut.setLevel(level);
+
+            zipFile(srcDir, srcDir.getName(), dstFile.getName(), (file, name) -> zipFile(file, name, zipOut, strategies));
         }
     }
 
-    private void zipFile(File fileToZip, String fileName, ZipOutputStream zipOut, String dstFileName) throws IOException {
+    private interface EntryWriter {
+        void write(File file, String fileName) throws IOException;
+    }
+
+    private void zipFile(File fileToZip, String fileName, String dstFileName, EntryWriter writer) throws IOException {
         if (fileToZip.isHidden()) {
             return;
         }
@@ -189,7 +508,7 @@ public class Compress {
             File[] children = fileToZip.listFiles();
             if (children != null) {
                 for (File childFile : children) {
-                    zipFile(childFile, fileName + "/" + childFile.getName(), zipOut, dstFileName);
+                    zipFile(childFile, fileName + "/" + childFile.getName(), dstFileName, writer);
                 }
             }
             return;
@@ -199,6 +518,10 @@ public class Compress {
             return;
         }
 
+        writer.write(fileToZip, fileName);
+    }
+
+    private void zipFile(File fileToZip, String fileName, ZipOutputStream zipOut) throws IOException {
         try (FileInputStream fis = new FileInputStream(fileToZip)) {
             ZipEntry zipEntry = new ZipEntry(fileName);
             zipOut.putNextEntry(zipEntry);
@@ -211,6 +534,27 @@ public class Compress {
         }
     }
 
+    private void zipFile(File fileToZip, String fileName, ZipArchiveOutputStream zipOut, StrategyStats strategies) throws IOException {
+        long begin = System.nanoTime();
+        EntryStrategy strategy = EntryStrategy.choose(fileToZip);
+        try (FileInputStream fis = new FileInputStream(fileToZip)) {
+            ZipArchiveEntry zipEntry = new ZipArchiveEntry(fileName);
+            if (strategy == EntryStrategy.STORE) {
+                zipEntry.setMethod(ZipEntry.STORED);
+            } else {
+                zipOut.setLevel(strategy.level);
+            }
+            zipOut.putArchiveEntry(zipEntry);
+            byte[] bytes = new byte[16384];
+            int length;
+            while ((length = fis.read(bytes)) >= 0) {
+                zipOut.write(bytes, 0, length);
+            }
+            zipOut.closeArchiveEntry();
+            strategies.add(strategy, fileToZip.length(), zipEntry.getCompressedSize(), System.nanoTime() - begin);
+        }
+    }
+
     private void deleteLocalDir(File file) {
         log.debug("Deleting from local file system: "+file.toPath());
         File[] flist = file.listFiles();
@@ -0,0 +1,67 @@
+package com.ibm.trl.serverlessbench;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.zip.Deflater;
+
+/*
+ * How an entry is compressed when Compress runs with "strategy": "auto". A sample of the entry
+ * is deflated at the fastest level: if that barely shrinks it (already compressed data such as
+ * JPEGs or most PDFs) the entry is stored, if it shrinks moderately it is deflated fast, and
+ * if it shrinks well (text) it is deflated at the highest level, where the extra effort pays off.
+ */
+enum EntryStrategy {
+    STORE(Deflater.NO_COMPRESSION),
+    FAST(Deflater.BEST_SPEED),
+    HIGH(Deflater.BEST_COMPRESSION);
+
+    // a sample consists of up to three slices taken from the beginning, the middle and the end
+    static final int SLICE_SIZE = 16 * 1024;
+    static final int SAMPLE_SIZE = 3 * SLICE_SIZE;
+
+    private static final double STORE_RATIO = 0.9;
+    private static final double HIGH_RATIO = 0.5;
+
+    final int level;
+
+    EntryStrategy(int level) {
+        this.level = level;
+    }
+
+    static EntryStrategy choose(File file) throws IOException {
+        long size = file.length();
+        byte[] sample = new byte[(int) Math.min(size, SAMPLE_SIZE)];
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            if (size <= SAMPLE_SIZE) {
+                raf.readFully(sample);
+            } else {
+                for (int i = 0; i < 3; i++) {
+                    raf.seek((size - SLICE_SIZE) * i / 2);
+                    raf.readFully(sample, i * SLICE_SIZE, SLICE_SIZE);
+                }
+            }
+        }
+        return choose(sample, sample.length);
+    }
+
+    static EntryStrategy choose(byte[] sample, int length) {
+        if (length == 0) {
+            return FAST;
+        }
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        long compressed = 0;
+        try {
+            deflater.setInput(sample, 0, length);
+            deflater.finish();
+            byte[] out = new byte[8192];
+            while (!deflater.finished()) {
+                compressed += deflater.deflate(out);
+            }
+        } finally {
+            deflater.end();
+        }
+        double ratio = (double) compressed / length;
+        return ratio > STORE_RATIO ? STORE : ratio > HIGH_RATIO ? FAST : HIGH;
+    }
+}
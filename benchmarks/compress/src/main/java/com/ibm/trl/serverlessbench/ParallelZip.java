@@ -0,0 +1,217 @@
+package com.ibm.trl.serverlessbench;
+
+import org.apache.commons.compress.archivers.zip.DefaultBackingStoreSupplier;
+import org.apache.commons.compress.archivers.zip.ParallelScatterZipCreator;
+import org.apache.commons.compress.archivers.zip.ScatterStatistics;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.jboss.logging.Logger;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/*
+ * Parallel engine of Compress: the entries are deflated concurrently by ParallelScatterZipCreator on a
+ * ForkJoinPool, each thread into its own scatter file below the scratch directory, and the scatter files
+ * are then merged into a single zip. By default the pool has availableProcessors() threads, which
+ * follows the CPU quota of the container.
+ *
+ * Every worker records its CPU time when it terminates; their sum divided by the elapsed compression
+ * time is the speedup over deflating the same entries on one thread.
+ *
+ * A creator deflates all its entries at one level, so with EntryStrategy there is one creator for the
+ * fast and one for the high level (which also takes the stored entries), both on the same pool.
+ * The entries are sampled on the calling thread while they are added.
+ */
+class ParallelZip {
+    private static final double nanosecInSec = 1_000_000_000.0;
+
+    private static final Logger log = Logger.getLogger(ParallelZip.class);
+    private static final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+    private static final class Worker extends ForkJoinWorkerThread {
+        private final ConcurrentLinkedQueue<Long> cpuTimes;
+
+        Worker(ForkJoinPool pool, ConcurrentLinkedQueue<Long> cpuTimes) {
+            super(pool);
+            this.cpuTimes = cpuTimes;
+        }
+
+        @Override
+        protected void onTermination(Throwable exception) {
+            cpuTimes.add(threadBean.getCurrentThreadCpuTime());
+            super.onTermination(exception);
+        }
+    }
+
+    private ParallelZip() {
+    }
+
+    /*
+     * Returns "engine", "level", "threads", "thread_cpu_times" (seconds), "cpu_time", "compress_time"
+     * (deflating), "merge_time" and "speedup".
+     */
+    static Map<String, Object> zip(File dstFile, File srcDir, Path scratchDir, int level, int threads,
+                                   StrategyStats strategies) throws IOException {
+        log.debug("in zip(): source directory: " + srcDir + " destination file: " + dstFile + " threads: " + threads);
+        ConcurrentLinkedQueue<Long> cpuTimes = new ConcurrentLinkedQueue<>();
+        ForkJoinPool pool = new ForkJoinPool(threads, p -> new Worker(p, cpuTimes), null, false);
+        // the first writeTo() shuts the pool down and waits until the entries of all creators are deflated
+        Map<Integer, ParallelScatterZipCreator> creators = new LinkedHashMap<>();
+        for (int creatorLevel : strategies == null ? List.of(level) : List.of(EntryStrategy.HIGH.level, EntryStrategy.FAST.level)) {
+            creators.put(creatorLevel, new ParallelScatterZipCreator(pool, new DefaultBackingStoreSupplier(scratchDir), creatorLevel));
+        }
+        Entries entries = new Entries(creators, level, strategies);
+
+        try (ZipArchiveOutputStream zipOut = new ZipArchiveOutputStream(dstFile)) {
+            addEntries(entries, srcDir, srcDir.getName(), dstFile.getName());
+            for (ParallelScatterZipCreator creator : creators.values()) {
+                creator.writeTo(zipOut);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compressing " + srcDir, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException cause) {
+                throw cause.getCause();
+            }
+            throw new IOException("Compressing " + srcDir + " failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+
+        if (strategies != null) {
+            entries.addStrategies(dstFile);
+        }
+
+        long mergeMillis = 0;
+        for (ParallelScatterZipCreator creator : creators.values()) {
+            mergeMillis += creator.getStatisticsMessage().getMergingElapsed();
+        }
+        ScatterStatistics statistics = creators.values().iterator().next().getStatisticsMessage();
+        List<Double> threadCpuTimes = new ArrayList<>();
+        long cpuTime = 0;
+        for (long nanos : cpuTimes) {
+            threadCpuTimes.add(nanos / nanosecInSec);
+            cpuTime += nanos;
+        }
+        double compressTime = statistics.getCompressionElapsed() / 1000.0;
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("engine", "parallel");
+        stats.put("level", strategies == null ? level : "auto");
+        stats.put("threads", threads);
+        stats.put("thread_cpu_times", threadCpuTimes);
+        stats.put("cpu_time", cpuTime / nanosecInSec);
+        stats.put("compress_time", compressTime);
+        stats.put("merge_time", mergeMillis / 1000.0);
+        stats.put("speedup", compressTime > 0.0 ? cpuTime / nanosecInSec / compressTime : 0.0);
+        return stats;
+    }
+
+    /*
+     * Adds entries to the creator of their level and, with strategies, keeps the strategy and
+     * the time of every entry until its compressed size can be read from the finished archive.
+     */
+    private static final class Entries {
+        private final Map<Integer, ParallelScatterZipCreator> creators;
+        private final int level;
+        private final StrategyStats strategies;
+        private final Map<String, EntryStrategy> chosen = new ConcurrentHashMap<>();
+        private final Map<String, Long> nanos = new ConcurrentHashMap<>();
+
+        Entries(Map<Integer, ParallelScatterZipCreator> creators, int level, StrategyStats strategies) {
+            this.creators = creators;
+            this.level = level;
+            this.strategies = strategies;
+        }
+
+        void add(File file, String name) throws IOException {
+            ZipArchiveEntry entry = new ZipArchiveEntry(file, name);
+            if (strategies == null) {
+                entry.setMethod(ZipEntry.DEFLATED);
+                creators.get(level).addArchiveEntry(entry, () -> open(file));
+                return;
+            }
+
+            long begin = System.nanoTime();
+            EntryStrategy strategy = EntryStrategy.choose(file);
+            entry.setMethod(strategy == EntryStrategy.STORE ? ZipEntry.STORED : ZipEntry.DEFLATED);
+            chosen.put(name, strategy);
+            nanos.put(name, System.nanoTime() - begin);
+            int creatorLevel = strategy == EntryStrategy.FAST ? EntryStrategy.FAST.level : EntryStrategy.HIGH.level;
+            creators.get(creatorLevel).addArchiveEntry(entry, () -> new FilterInputStream(open(file)) {
+                private final long opened = System.nanoTime();
+
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    nanos.merge(name, System.nanoTime() - opened, Long::sum);
+                }
+            });
+        }
+
+        void addStrategies(File archive) throws IOException {
+            try (ZipFile zipFile = new ZipFile(archive)) {
+                for (ZipEntry entry : Collections.list(zipFile.entries())) {
+                    EntryStrategy strategy = chosen.get(entry.getName());
+                    if (strategy != null) {
+                        strategies.add(strategy, entry.getSize(), entry.getCompressedSize(), nanos.get(entry.getName()));
+                    }
+                }
+            }
+        }
+
+        private static InputStream open(File file) {
+            try {
+                return Files.newInputStream(file.toPath());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /*
+     * Walks the directory like Compress.zipFile(): hidden files and the archive itself are skipped.
+     */
+    private static void addEntries(Entries entries, File fileToZip, String fileName, String dstFileName) throws IOException {
+        if (fileToZip.isHidden()) {
+            return;
+        }
+
+        if (fileToZip.isDirectory()) {
+            File[] children = fileToZip.listFiles();
+            if (children != null) {
+                for (File childFile : children) {
+                    addEntries(entries, childFile, fileName + "/" + childFile.getName(), dstFileName);
+                }
+            }
+            return;
+        }
+
+        if (fileToZip.getName().equals(dstFileName)) {
+            return;
+        }
+
+        entries.add(fileToZip, fileName);
+    }
+}
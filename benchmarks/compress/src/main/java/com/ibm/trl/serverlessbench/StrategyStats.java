@@ -0,0 +1,38 @@
+package com.ibm.trl.serverlessbench;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/*
+ * Entries, input bytes, compressed bytes and time summed per EntryStrategy.
+ * The time of an entry includes sampling it. Entries may be added from several threads.
+ */
+class StrategyStats {
+    private static final double nanosecInSec = 1_000_000_000.0;
+
+    private final long[] entries = new long[EntryStrategy.values().length];
+    private final long[] bytes = new long[EntryStrategy.values().length];
+    private final long[] compressedBytes = new long[EntryStrategy.values().length];
+    private final long[] nanos = new long[EntryStrategy.values().length];
+
+    synchronized void add(EntryStrategy strategy, long size, long compressedSize, long elapsedNanos) {
+        int i = strategy.ordinal();
+        entries[i]++;
+        bytes[i] += size;
+        compressedBytes[i] += compressedSize;
+        nanos[i] += elapsedNanos;
+    }
+
+    synchronized Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        for (EntryStrategy strategy : EntryStrategy.values()) {
+            int i = strategy.ordinal();
+            map.put(strategy.name().toLowerCase(Locale.ROOT), Map.of("entries", entries[i],
+                                                                     "bytes", bytes[i],
+                                                                     "compressed_bytes", compressedBytes[i],
+                                                                     "time", nanos[i] / nanosecInSec));
+        }
+        return map;
+    }
+}
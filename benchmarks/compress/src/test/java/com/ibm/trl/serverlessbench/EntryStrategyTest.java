@@ -0,0 +1,121 @@
+package com.ibm.trl.serverlessbench;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class EntryStrategyTest {
+
+    @TempDir
+    Path dir;
+
+    private static byte[] random(int size) {
+        byte[] data = new byte[size];
+        new Random(42).nextBytes(data);
+        return data;
+    }
+
+    private static byte[] text(int size) {
+        byte[] line = "the quick brown fox jumps over the lazy dog\n".getBytes(StandardCharsets.US_ASCII);
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = line[i % line.length];
+        }
+        return data;
+    }
+
+    @Test
+    void incompressibleDataIsStored() {
+        byte[] sample = random(EntryStrategy.SAMPLE_SIZE);
+        assertEquals(EntryStrategy.STORE, EntryStrategy.choose(sample, sample.length));
+    }
+
+    @Test
+    void repetitiveDataIsDeflatedAtTheHighestLevel() {
+        byte[] sample = text(EntryStrategy.SAMPLE_SIZE);
+        assertEquals(EntryStrategy.HIGH, EntryStrategy.choose(sample, sample.length));
+    }
+
+    @Test
+    void moderatelyCompressibleDataIsDeflatedFast() {
+        // every other byte is random, so the sample shrinks by less than half
+        byte[] sample = random(EntryStrategy.SAMPLE_SIZE);
+        for (int i = 0; i < sample.length; i += 2) {
+            sample[i] = 0;
+        }
+        assertEquals(EntryStrategy.FAST, EntryStrategy.choose(sample, sample.length));
+    }
+
+    @Test
+    void emptyEntriesAreDeflatedFast() {
+        assertEquals(EntryStrategy.FAST, EntryStrategy.choose(new byte[0], 0));
+    }
+
+    @Test
+    void fileSampleCoversBeginningMiddleAndEnd() throws IOException {
+        // random middle and end slices make two thirds of the sample incompressible, although the file is mostly text
+        byte[] data = text(1 << 20);
+        byte[] slices = random(2 * EntryStrategy.SLICE_SIZE);
+        System.arraycopy(slices, 0, data, (data.length - EntryStrategy.SLICE_SIZE) / 2, EntryStrategy.SLICE_SIZE);
+        System.arraycopy(slices, EntryStrategy.SLICE_SIZE, data, data.length - EntryStrategy.SLICE_SIZE, EntryStrategy.SLICE_SIZE);
+        File file = Files.write(dir.resolve("mixed.txt"), data).toFile();
+        assertEquals(EntryStrategy.FAST, EntryStrategy.choose(file));
+
+        File small = Files.write(dir.resolve("small.bin"), random(1000)).toFile();
+        assertEquals(EntryStrategy.STORE, EntryStrategy.choose(small));
+    }
+
+    @Test
+    void serialAutoModeWritesValidStoredAndDeflatedEntries() throws IOException {
+        Path src = Files.createDirectories(dir.resolve("src"));
+        byte[] binary = random(200_000);
+        byte[] text = text(200_000);
+        Files.write(src.resolve("image.jpg"), binary);
+        Files.write(src.resolve("notes.txt"), text);
+        File zip = dir.resolve("out.zip").toFile();
+
+        StrategyStats strategies = new StrategyStats();
+        new Compress().zipDir(zip, src.toFile(), 6, strategies);
+
+        try (ZipFile zipFile = new ZipFile(zip)) {
+            ZipEntry stored = zipFile.getEntry("src/image.jpg");
+            assertEquals(ZipEntry.STORED, stored.getMethod());
+            assertArrayEquals(binary, zipFile.getInputStream(stored).readAllBytes());
+
+            ZipEntry deflated = zipFile.getEntry("src/notes.txt");
+            assertEquals(ZipEntry.DEFLATED, deflated.getMethod());
+            assertArrayEquals(text, zipFile.getInputStream(deflated).readAllBytes());
+        }
+        Map<?, ?> store = (Map<?, ?>) strategies.toMap().get("store");
+        assertEquals(1L, store.get("entries"));
+        assertEquals(200_000L, store.get("compressed_bytes"));
+    }
+
+    @Test
+    void serialModeWithoutStrategyDeflatesEveryEntry() throws IOException {
+        Path src = Files.createDirectories(dir.resolve("src"));
+        byte[] binary = random(50_000);
+        Files.write(src.resolve("image.jpg"), binary);
+        File zip = dir.resolve("out.zip").toFile();
+
+        new Compress().zipDir(zip, src.toFile(), 6, null);
+
+        try (ZipFile zipFile = new ZipFile(zip)) {
+            ZipEntry entry = zipFile.getEntry("src/image.jpg");
+            assertEquals(ZipEntry.DEFLATED, entry.getMethod());
+            assertArrayEquals(binary, zipFile.getInputStream(entry).readAllBytes());
+        }
+    }
+}
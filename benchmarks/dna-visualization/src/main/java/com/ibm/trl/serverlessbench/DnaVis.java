@@ -1,18 +1,17 @@
 package com.ibm.trl.serverlessbench;
 
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
-import com.ibm.trl.serverlessbench.wrapper.BenchmarkStorageUtil;
 import com.ibm.trl.serverlessbench.wrapper.BenchmarkWrapper;
+import com.ibm.trl.serverlessbench.wrapper.BlobDownloader;
+import com.ibm.trl.serverlessbench.wrapper.PhaseTimer;
+import com.ibm.trl.serverlessbench.wrapper.RecordingRequest;
 
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.annotation.JsonAutoDetect.Visibility;
@@ -35,15 +34,26 @@ public class DnaVis {
     private static BlobStore blobStore;
     private static String bucket;
 
-    void onStart(@Observes StartupEvent ev) {
-        blobStore = BenchmarkStorageUtil.setupStorage();
+    void onStart(@Observes StartupEvent ev, BlobStore sharedBlobStore) {
+        blobStore = sharedBlobStore;
         bucket = System.getenv("STORAGE_BUCKET");
     }
 
-    public static class FunInput {
+    public static class FunInput implements RecordingRequest {
         public String bucket;
         public String file;
         public boolean debug;
+        public boolean jfr;
+
+        @Override
+        public boolean jfr() {
+            return jfr;
+        }
+
+        @Override
+        public String bucket() {
+            return bucket;
+        }
     }
 
     @Funq("dna-visualization")
@@ -71,25 +81,21 @@ public class DnaVis {
         }
 
         // Download input file from object storage
-        long download_begin = System.nanoTime();
-        try (FileOutputStream fos = new FileOutputStream(inFile);
-             BufferedOutputStream os = new BufferedOutputStream(fos)){
-            try (InputStream is = blobStore.getBlob(input.bucket, "input/" + input.file).getPayload().openStream()) {
-                byte[] buffer = new byte[8192];
-                int bytesRead;
-                while ((bytesRead = is.read(buffer)) != -1) {
-                    os.write(buffer, 0, bytesRead);
-                }
-            }
+        PhaseTimer phases = PhaseTimer.current();
+        phases.begin(PhaseTimer.DOWNLOAD);
+        Map<String, Object> download;
+        try {
+            download = BlobDownloader.download(blobStore, input.bucket, "input/" + input.file, inFile.toPath());
         } catch (Exception e) {
+            phases.end();
             cleanupAfterException(retVal, log, e, inFile, outFile);
             return retVal;
         }
-        long download_end = System.nanoTime();
+        double download_time = phases.end() / nanosecInSec;
 
         // Transform FASTA to Squiggle
         ArrayList<SquiggleData> plotList = new ArrayList<>();
-        double                  process_total = 0.0;
+        long                    process_total = 0L;
         try (FASTAFileReader fasta = new FASTAFileReaderImpl(inFile)) {
             FASTAElementIterator itr = fasta.getIterator();
 
@@ -102,6 +108,7 @@ public class DnaVis {
             do {
                 process_total += transform(itr.next().getSequence(), plotList);
             } while(itr.hasNext());
+            phases.add(PhaseTimer.COMPUTE, process_total);
 
         } catch (Exception e) {
             cleanupAfterException(retVal, log, e, inFile, outFile);
@@ -109,40 +116,43 @@ public class DnaVis {
         }
 
         // Serialize to JSON
-        long json_begin = System.nanoTime();
+        phases.begin("serialize");
         try {
             ObjectMapper mapper = new ObjectMapper();
             mapper.writeValue(outFile, plotList.toArray());
         } catch (Exception e) {
+            phases.end();
             cleanupAfterException(retVal, log, e, inFile, outFile);
             return retVal;
         }
-        long json_end = System.nanoTime();
+        double serialize_time = phases.end() / nanosecInSec;
 
         // Upload Squiggle data (if 'debug' == true)
-        long upload_begin = System.nanoTime();
-        long upload_end   = upload_begin;
+        double upload_time = 0.0;
         if(input.debug) {
+            phases.begin(PhaseTimer.UPLOAD);
             try {
                 blobStore.putBlob(input.bucket, blobStore.blobBuilder("output/" + input.file).payload(outFile).build());
             } catch (Exception e) {
+                phases.end();
                 cleanupAfterException(retVal, log, e, inFile, outFile);
                 return retVal;
             }
-            upload_end = System.nanoTime();
+            upload_time = phases.end() / nanosecInSec;
         }
 
-        retVal.put("measurement", Map.of("download_time", (download_end - download_begin) / nanosecInSec,
-                                        "compute_time", process_total,
-                                        "serialize_time", (json_end - json_begin) / nanosecInSec,
-                                        "upload_time", (upload_end - upload_begin) / nanosecInSec));
+        retVal.put("measurement", Map.of("download_time", download_time,
+                                        "download_throughput", download.get("throughput"),
+                                        "compute_time", process_total / nanosecInSec,
+                                        "serialize_time", serialize_time,
+                                        "upload_time", upload_time));
         retVal.put("output", Map.of("bucket", input.bucket,
                                     "key", "output/" + input.file));
         cleanFiles(log, inFile, outFile);
         return retVal;
     }
 
-    private static double transform(String seq, ArrayList<SquiggleData> list) {
+    private static long transform(String seq, ArrayList<SquiggleData> list) {
         int      len = seq.length();
         double   curX = 0.0;
         double   curY = 0.0;
@@ -166,7 +176,7 @@ public class DnaVis {
 
         list.add(new SquiggleData(x, y));
 
-        return (process_end - process_begin)/nanosecInSec;
+        return process_end - process_begin;
     }
 
     void cleanupAfterException(Map<String, Object> retVal, Logger log, Exception e, File inFile, File outFile) {
@@ -3,6 +3,7 @@ package com.ibm.trl.serverlessbench;
 import java.sql.Timestamp;
 
 import com.ibm.trl.serverlessbench.wrapper.BenchmarkWrapper;
+import com.ibm.trl.serverlessbench.wrapper.PhaseTimer;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -73,34 +74,35 @@ public class DynamicHtml {
         int loadSize = inputSize(input.size);
         Random rand = new Random();
 
-        long startTime = System.nanoTime();
+        PhaseTimer phases = PhaseTimer.current();
+        phases.begin(PhaseTimer.COMPUTE);
 
-        long initStart = System.nanoTime();
+        phases.begin("init");
         Jinjava jinjava = new Jinjava();
-        long initEnd = System.nanoTime();
+        double initTime = phases.end() / nanosecInSec;
         HashMap<String, Object> context = new HashMap<>();
 
-        long setupStart = System.nanoTime();
+        phases.begin("setup");
         List<Integer> integers = new ArrayList<>(loadSize);
         for (int i = 0; i < loadSize; i++) {
             integers.add(rand.nextInt(1000000));
         }
-        long setupEnd = System.nanoTime();
+        double setupTime = phases.end() / nanosecInSec;
 
         context.put("username", "testname");
         context.put("random_numbers", integers);
         Timestamp timestamp = new Timestamp(System.currentTimeMillis());
         context.put("cur_time", timestamp.toString());
 
-        long renderStart = System.nanoTime();
+        phases.begin("render");
         String renderedTemplate = jinjava.render(template, context);
-        long renderEnd = System.nanoTime();
-        long stopTime = renderEnd;
+        double renderTime = phases.end() / nanosecInSec;
+        double totalRunTime = phases.end() / nanosecInSec;
 
-        retVal.put("measurement", Map.of("init_time", (initEnd - initStart) / nanosecInSec,
-                                        "setup_time", (setupEnd - setupStart) / nanosecInSec,
-                                        "render_time", (renderEnd - renderStart) / nanosecInSec,
-                                        "total_run_time", (stopTime - startTime) / nanosecInSec));
+        retVal.put("measurement", Map.of("init_time", initTime,
+                                        "setup_time", setupTime,
+                                        "render_time", renderTime,
+                                        "total_run_time", totalRunTime));
         retVal.put("output", Map.of("input_size", input.size,
                                     "converted_size", loadSize,
                                     "rendered_Length", renderedTemplate.length()));
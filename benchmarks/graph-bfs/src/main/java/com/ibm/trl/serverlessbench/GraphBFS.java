@@ -8,6 +8,7 @@ import java.util.Map;
 import java.util.Objects;
 
 import com.ibm.trl.serverlessbench.wrapper.BenchmarkWrapper;
+import com.ibm.trl.serverlessbench.wrapper.PhaseTimer;
 
 import org.jboss.logging.Logger;
 import org.jgrapht.Graph;
@@ -53,7 +54,8 @@ public class GraphBFS {
         var layers    = new ArrayList<Integer>(graphSize);
         var parents   = new Integer[graphSize];
 
-        long process_begin = System.nanoTime();
+        PhaseTimer phases = PhaseTimer.current();
+        phases.begin(PhaseTimer.COMPUTE);
         BreadthFirstIterator<Integer, DefaultEdge> it = new BreadthFirstIterator<>(inputGraph);
 
         int numVisited = 0;
@@ -73,11 +75,11 @@ public class GraphBFS {
         }
         layers.add(numVisited);
 
-        long process_end= System.nanoTime();
+        double compute_time = phases.end() / nanosecInSec;
 
         layers.removeIf(Objects::isNull);
 
-        measurement.put("compute_time", (process_end - process_begin) / nanosecInSec);
+        measurement.put("compute_time", compute_time);
         retVal.put("measurement", measurement);
         if (input.debug) {
             retVal.put("output", Map.of("vertices", vertices,
@@ -115,11 +117,10 @@ public class GraphBFS {
         BarabasiAlbertGraphGenerator<Integer, DefaultEdge> generator = 
                 new BarabasiAlbertGraphGenerator<>(10, 1, size);
 
-        long graph_generating_begin = System.nanoTime();
+        PhaseTimer phases = PhaseTimer.current();
+        phases.begin(PhaseTimer.SETUP);
         generator.generateGraph(inputGraph);
-        long graph_generating_end= System.nanoTime();
-
-        measurement.put("graph_generating_time", (graph_generating_end - graph_generating_begin) / nanosecInSec);
+        measurement.put("graph_generating_time", phases.end() / nanosecInSec);
 
         return inputGraph;
     }
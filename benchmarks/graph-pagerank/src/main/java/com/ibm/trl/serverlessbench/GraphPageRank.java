@@ -5,6 +5,7 @@ import java.util.LinkedHashMap;
 import java.util.Map;
 
 import com.ibm.trl.serverlessbench.wrapper.BenchmarkWrapper;
+import com.ibm.trl.serverlessbench.wrapper.PhaseTimer;
 
 import org.jboss.logging.Logger;
 import org.jgrapht.Graph;
@@ -46,11 +47,11 @@ public class GraphPageRank {
 
         PageRank<Integer, DefaultEdge> algo = new PageRank<>(inputGraph);
 
-        long process_begin = System.nanoTime();
+        PhaseTimer phases = PhaseTimer.current();
+        phases.begin(PhaseTimer.COMPUTE);
         Map<Integer, Double> score = algo.getScores();
-        long process_end= System.nanoTime();
 
-        measurement.put("compute_time", (process_end - process_begin) / nanosecInSec);
+        measurement.put("compute_time", phases.end() / nanosecInSec);
         retVal.put("measurement", measurement);
         if (input.debug) {
             retVal.put("score", score);
@@ -86,11 +87,10 @@ public class GraphPageRank {
         BarabasiAlbertGraphGenerator<Integer, DefaultEdge> generator = 
                 new BarabasiAlbertGraphGenerator<>(10, 1, size);
 
-        long graph_generating_begin = System.nanoTime();
+        PhaseTimer phases = PhaseTimer.current();
+        phases.begin(PhaseTimer.SETUP);
         generator.generateGraph(inputGraph);
-        long graph_generating_end= System.nanoTime();
-
-        measurement.put("graph_generating_time", (graph_generating_end - graph_generating_begin) / nanosecInSec);
+        measurement.put("graph_generating_time", phases.end() / nanosecInSec);
 
         return inputGraph;
     }
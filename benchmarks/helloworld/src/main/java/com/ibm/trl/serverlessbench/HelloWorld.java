@@ -4,6 +4,7 @@ import java.util.LinkedHashMap;
 import java.util.Map;
 
 import com.ibm.trl.serverlessbench.wrapper.BenchmarkWrapper;
+import com.ibm.trl.serverlessbench.wrapper.PhaseTimer;
 
 import org.jboss.logging.Logger;
 
@@ -31,15 +32,16 @@ public class HelloWorld {
                 hello_count = hc;
             }
         }
-        long processTimeBegin = System.nanoTime();
+        PhaseTimer phases = PhaseTimer.current();
+        phases.begin(PhaseTimer.COMPUTE);
 
         String hello = "world!";
         for (int i = 0; i<hello_count; i++) {
             hello = "Hello " + hello;
         }
-        long processTimeEnd = System.nanoTime();
+        double process_time = phases.end() / nanosecInSec;
 
-        retVal.put("measurement", Map.of("compute_time", (processTimeEnd - processTimeBegin) / nanosecInSec));
+        retVal.put("measurement", Map.of("compute_time", process_time));
         retVal.put("hello_count", hello_count);
 
         log.debug("retVal.measurement="+retVal.get("measurement"));
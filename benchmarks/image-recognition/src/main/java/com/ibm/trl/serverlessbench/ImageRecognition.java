@@ -1,36 +1,35 @@
 package com.ibm.trl.serverlessbench;
 
+import java.awt.image.BufferedImage;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.net.URI;
 import java.nio.file.Paths;
 import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import ai.djl.MalformedModelException;
 import ai.djl.inference.Predictor;
 import ai.djl.modality.Classifications;
 import ai.djl.modality.cv.Image;
 import ai.djl.modality.cv.ImageFactory;
-import ai.djl.modality.cv.transform.CenterCrop;
-import ai.djl.modality.cv.transform.Normalize;
-import ai.djl.modality.cv.transform.Resize;
-import ai.djl.modality.cv.transform.ToTensor;
-import ai.djl.modality.cv.translator.ImageClassificationTranslator;
-import ai.djl.repository.zoo.Criteria;
-import ai.djl.repository.zoo.Criteria.Builder;
 import ai.djl.repository.zoo.ModelNotFoundException;
-import ai.djl.repository.zoo.ZooModel;
 import ai.djl.translate.TranslateException;
-import ai.djl.translate.Translator;
 
-import com.ibm.trl.serverlessbench.wrapper.BenchmarkStorageUtil;
+import com.ibm.trl.serverlessbench.wrapper.BenchmarkConfig;
 import com.ibm.trl.serverlessbench.wrapper.BenchmarkWrapper;
+import com.ibm.trl.serverlessbench.wrapper.BlobCache;
+import com.ibm.trl.serverlessbench.wrapper.PhaseTimer;
+import com.ibm.trl.serverlessbench.wrapper.RecordingRequest;
 
 import io.quarkus.funqy.Funq;
 
@@ -41,157 +40,400 @@ import org.jclouds.blobstore.BlobStore;
 
 public class ImageRecognition {
     private static final double nanosecInSec = 1_000_000_000.0;
+    private static final int DEFAULT_BATCH_SIZE = 8;
+    private static final int DEFAULT_PARALLELISM = 8;
+    private static final int DEFAULT_WARMUP_ITERATIONS = 3;
+    // Resize(256) of the translator keeps it at its size
+    private static final int WARMUP_IMAGE_SIZE = 256;
 
 
-    private static Builder<Image, Classifications> model;
+    // loaded models by model and synset file, see PredictorPool
+    private static final Map<String, PredictorPool> models = new ConcurrentHashMap<>();
     private static final Object lock = new Object();
     private static BlobStore blobStore;
     private static String bucket;
 
 
-    void onStart(@Observes StartupEvent ev) {
-        blobStore = BenchmarkStorageUtil.setupStorage();
+    // the model preloaded at startup once it is warmed up, see preload()
+    private static volatile String preloadedModel;
+    private static volatile boolean preloading;
+    private static volatile double warmupTime;
+
+
+    void onStart(@Observes StartupEvent ev, BlobStore sharedBlobStore) {
+        blobStore = sharedBlobStore;
         bucket = System.getenv("STORAGE_BUCKET");
+
+        String preload_model = System.getenv("PRELOAD_MODEL");
+        String preload_synset = System.getenv("PRELOAD_SYNSET");
+        if (preload_model != null && preload_synset != null && bucket != null) {
+            // parsed here so that an invalid value fails the startup instead of skipping the warm-up
+            int warmup_iterations = BenchmarkConfig.getInt("WARMUP_ITERATIONS", "serverlessbench.warmup-iterations", DEFAULT_WARMUP_ITERATIONS);
+            preloading = true;
+            Thread.ofPlatform().name("model-warmup").daemon().start(() -> preload(preload_model, preload_synset, warmup_iterations));
+        }
+    }
+
+    /*
+     * Downloads and loads the model at startup and classifies a synthetic noise image WARMUP_ITERATIONS
+     * times (default 3), so that the first request finds the native libraries loaded and the code paths
+     * compiled. ModelReadiness reports the container as not ready until this is done.
+     */
+    private void preload(String model, String synset, int warmup_iterations) {
+        long begin = System.nanoTime();
+        try {
+            FunInput input = new FunInput();
+            input.bucket = bucket;
+            input.model = model;
+            input.synset = synset;
+            PredictorPool pool = loadModel(input, PhaseTimer.current()).pool();
+            if (pool != null) {
+                Image img = syntheticImage();
+                Predictor<Image, Classifications> predictor = pool.borrow();
+                try {
+                    for (int i = 0; i < warmup_iterations; i++) {
+                        predictor.predict(img);
+                    }
+                } finally {
+                    pool.release(predictor);
+                }
+                preloadedModel = modelId(model, synset);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            warmupTime = (System.nanoTime() - begin) / nanosecInSec;
+            preloading = false;
+        }
+    }
+
+    private static Image syntheticImage() {
+        BufferedImage noise = new BufferedImage(WARMUP_IMAGE_SIZE, WARMUP_IMAGE_SIZE, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(0);
+        for (int y = 0; y < WARMUP_IMAGE_SIZE; y++) {
+            for (int x = 0; x < WARMUP_IMAGE_SIZE; x++) {
+                noise.setRGB(x, y, random.nextInt(0x1000000));
+            }
+        }
+        return ImageFactory.getInstance().fromImage(noise);
+    }
+
+    // for ModelReadiness
+    static boolean preloading() {
+        return preloading;
+    }
+
+    static String preloadedModel() {
+        return preloadedModel;
+    }
+
+    static double warmupTime() {
+        return warmupTime;
     }
 
-    public static class FunInput {
+    // whether the model of the request was preloaded and warmed up before the request, and how long that took
+    private static Map<String, Object> warmup(FunInput input) {
+        return Map.of("prewarmed", modelId(input.model, input.synset).equals(preloadedModel),
+                      "warmup_time", warmupTime);
+    }
+
+    private static String modelId(String model, String synset) {
+        return model + "|" + synset;
+    }
+
+    public static class FunInput implements RecordingRequest {
         public String file;
         public String model;
         public String synset;
         public String bucket;
+        public boolean jfr;
+        // several images classified in batches instead of file
+        public List<String> files;
+        // images per forward pass with files (default 8)
+        public int batch_size;
+        // concurrent downloads with files (default 8)
+        public int parallelism;
+
+        @Override
+        public boolean jfr() {
+            return jfr;
+        }
+
+        @Override
+        public String bucket() {
+            return bucket;
+        }
     }
 
     @Funq("image-recognition")
     @BenchmarkWrapper
     public Map<String, Object> image_recognition(FunInput input) throws IOException {
         Map<String, Object> retVal = new LinkedHashMap<>();
-        if (input == null || (input.bucket == null && bucket == null) || input.file == null || input.model == null || input.synset == null) {
+        if (input == null || (input.bucket == null && bucket == null) || (input.file == null && (input.files == null || input.files.isEmpty()))
+                || input.model == null || input.synset == null) {
             retVal.put("message", "ERROR: ImageRecognition unable to run. file, model, synset and bucket need to be set.");
             return retVal;
         }
         if (input.bucket == null)
             input.bucket = bucket;
 
+        if (input.file == null) {
+            return recognize_batch(input, retVal);
+        }
+
         String key = "input/" + input.file;
         String key_path = String.format("/tmp/%s-%s", input.file, UUID.randomUUID());
 
-        String model_key = "input/" + input.model;
-        String model_key_path = String.join("/", "/tmp", input.model);
-
-        String synset = "input/" + input.synset;
-        String synset_path = String.join("/", "/tmp", input.synset);
-
-        long image_download_begin = System.nanoTime();
+        PhaseTimer phases = PhaseTimer.current();
+        phases.begin(PhaseTimer.DOWNLOAD);
+        phases.begin("image");
+        Map<String, Object> image_cache = Map.of();
         try {
-            downloadFile(input.bucket, key, key_path);
+            image_cache = downloadFile(input.bucket, key, key_path);
         } catch (Exception e) {
             e.printStackTrace();
         }
-        long image_download_end = System.nanoTime();
-
-        long synset_download_begin = 0L;
-        long synset_download_end = 0L;
-        long model_download_begin = 0L;
-        long model_download_end = 0L;
-        long model_process_begin = 0L;
-        long model_process_end = 0L;
-        if (model != null) {
-            synset_download_begin = System.nanoTime();
-            synset_download_end = synset_download_begin;
-            model_download_begin = System.nanoTime();
-            model_download_end = model_download_begin;
-            model_process_begin = System.nanoTime();
-            model_process_end = model_process_begin;
-        } else {
-            synchronized(lock) {
-                if (model != null) {
-                    synset_download_begin = System.nanoTime();
-                    synset_download_end = synset_download_begin;
-                    model_download_begin = System.nanoTime();
-                    model_download_end = model_download_begin;
-                    model_process_begin = System.nanoTime();
-                    model_process_end = model_process_begin;
-                } else {
-                    try {
-                        synset_download_begin = System.nanoTime();
-                        downloadFile(input.bucket, synset, synset_path);
-                        synset_download_end = System.nanoTime();
-
-                        model_download_begin = System.nanoTime();
-                        downloadFile(input.bucket, model_key, model_key_path);
-                        model_download_end = System.nanoTime();
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
+        double image_download_time = phases.end() / nanosecInSec;
+        phases.end();
 
-                    model_process_begin = System.nanoTime();
-                    model = Criteria.builder()
-                        .setTypes(Image.class, Classifications.class)
-                       .optModelPath(Paths.get(model_key_path));
-                    model_process_end = System.nanoTime();
-               }
-            }
-        }
+        Map<String, Object> warmup = warmup(input);
+        ModelLoad load = loadModel(input, phases);
+        PredictorPool pool = load.pool();
 
-        long process_begin = System.nanoTime();
+        phases.begin(PhaseTimer.COMPUTE);
         Image img = ImageFactory.getInstance().fromFile(Paths.get(key_path));
         img.getWrappedImage();
 
         String ret = "";
-        try {
-            Translator<Image, Classifications> translator = ImageClassificationTranslator.builder()
-                .addTransform(new Resize(256))
-                .addTransform(new CenterCrop(224, 224))
-                .addTransform(new ToTensor())
-                .addTransform(new Normalize(
-                        new float[] {0.485f, 0.456f, 0.406f}, /*mean*/
-                        new float[] {0.229f, 0.224f, 0.225f}) /*std*/)
-                .optApplySoftmax(true)
-                .optSynsetUrl("file:" + synset_path)
-                .build();
-
-            Criteria<Image, Classifications> criteria = model.optTranslator(translator).build();
-            ZooModel<Image, Classifications> zooModel = criteria.loadModel();
-            Predictor<Image, Classifications> predictor = zooModel.newPredictor();
-            String tokens = predictor.predict(img).best().getClassName();
-            ret = tokens.substring(tokens.indexOf(' ') + 1);
-            zooModel.getNDManager().close();
-        } catch (ModelNotFoundException | MalformedModelException | IOException | TranslateException e) {
-            e.printStackTrace();
+        double inference_time = 0.0;
+        if (pool != null) {
+            Predictor<Image, Classifications> predictor = pool.borrow();
+            try {
+                long begin = System.nanoTime();
+                String tokens = predictor.predict(img).best().getClassName();
+                inference_time = (System.nanoTime() - begin) / nanosecInSec;
+                ret = tokens.substring(tokens.indexOf(' ') + 1);
+            } catch (TranslateException e) {
+                e.printStackTrace();
+            } finally {
+                pool.release(predictor);
+            }
         }
-        long process_end = System.nanoTime();
-
-        double image_download_time = (image_download_end - image_download_begin) / nanosecInSec;
-        double model_download_time = (model_download_end - model_download_begin) / nanosecInSec;
-        double synset_download_time = (synset_download_end - synset_download_begin) / nanosecInSec;
-        double model_process_time = (model_process_end - model_process_begin) / nanosecInSec;
-        double process_time = (process_end - process_begin) / nanosecInSec;
+        double process_time = phases.end() / nanosecInSec;
 
 
-        retVal.put("measurement", Map.of("download_time", image_download_time + model_download_time + synset_download_time,
-                                         "compute_time", process_time + model_process_time,
-                                         "model_time", model_process_time,
-                                         "model_download_time", model_download_time));
+        retVal.put("measurement", Map.of("download_time", image_download_time + load.modelDownloadTime() + load.synsetDownloadTime(),
+                                         "compute_time", process_time + load.modelTime(),
+                                         "model_time", load.modelTime(),
+                                         "model_download_time", load.modelDownloadTime(),
+                                         "inference_time", inference_time,
+                                         "cold", load.cold(),
+                                         "predictors", pool != null ? pool.size() : 0,
+                                         "download_throughput", image_cache.getOrDefault("throughput", 0.0)));
         retVal.put("output", Map.of(     "class", ret));
+        retVal.put("cache", Map.of("hit", image_cache.getOrDefault("hit", false),
+                                   "bytes_saved", image_cache.getOrDefault("bytes_saved", 0L)));
+        retVal.put("warmup", warmup);
 
         Files.delete(Paths.get(URI.create("file:///" + key_path)));
 
         return retVal;
     }
 
-    public void downloadFile(String bucket, String key, String filePath) throws Exception {
+    /*
+     * Classifies the files in batches of up to batch_size images. The images are downloaded concurrently
+     * first, and every batch is then classified in a single forward pass: batchPredict() stacks the
+     * images of the batch into one NDArray. The latency of an image is the time from the start of
+     * the inference until its batch is classified, so images in later batches wait for the earlier ones.
+     */
+    private Map<String, Object> recognize_batch(FunInput input, Map<String, Object> retVal) throws IOException {
+        int batch_size = input.batch_size > 0 ? input.batch_size : DEFAULT_BATCH_SIZE;
+        int parallelism = input.parallelism > 0 ? input.parallelism : DEFAULT_PARALLELISM;
+        List<String> files = input.files;
+        int count = files.size();
+
+        PhaseTimer phases = PhaseTimer.current();
+        phases.begin(PhaseTimer.DOWNLOAD);
+        String[] key_paths = new String[count];
+        double[] download_times = new double[count];
+        String[] errors = new String[count];
+        AtomicInteger nextFile = new AtomicInteger();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < Math.min(parallelism, count); i++) {
+                executor.execute(() -> {
+                    int index;
+                    while ((index = nextFile.getAndIncrement()) < count) {
+                        String file = files.get(index);
+                        String key_path = String.format("/tmp/%s-%s", file, UUID.randomUUID());
+                        long begin = System.nanoTime();
+                        try {
+                            downloadFile(input.bucket, "input/" + file, key_path);
+                            key_paths[index] = key_path;
+                        } catch (Exception e) {
+                            e.printStackTrace();
+                            errors[index] = e.toString();
+                        }
+                        download_times[index] = (System.nanoTime() - begin) / nanosecInSec;
+                    }
+                });
+            }
+        }
+        double image_download_time = phases.end() / nanosecInSec;
+
+        Map<String, Object> warmup = warmup(input);
+        ModelLoad load = loadModel(input, phases);
+        PredictorPool pool = load.pool();
+
+        phases.begin(PhaseTimer.COMPUTE);
+        String[] classes = new String[count];
+        double[] latencies = new double[count];
+        List<Map<String, Object>> batches = new ArrayList<>();
+        double inference_time = 0.0;
+        int classified = 0;
+        long compute_begin = System.nanoTime();
+        if (pool != null) {
+            List<Integer> downloaded = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                if (key_paths[i] != null) {
+                    downloaded.add(i);
+                }
+            }
+            Predictor<Image, Classifications> predictor = pool.borrow();
+            try {
+                for (int from = 0; from < downloaded.size(); from += batch_size) {
+                    List<Integer> batch = downloaded.subList(from, Math.min(from + batch_size, downloaded.size()));
+                    long begin = System.nanoTime();
+                    long predict_begin;
+                    List<Classifications> results;
+                    try {
+                        List<Image> images = new ArrayList<>();
+                        for (int index : batch) {
+                            Image img = ImageFactory.getInstance().fromFile(Paths.get(key_paths[index]));
+                            img.getWrappedImage();
+                            images.add(img);
+                        }
+                        predict_begin = System.nanoTime();
+                        results = predictor.batchPredict(images);
+                    } catch (TranslateException | IOException e) {
+                        // the images of this batch are reported as failed and the next batch is classified
+                        e.printStackTrace();
+                        for (int index : batch) {
+                            errors[index] = e.toString();
+                        }
+                        continue;
+                    }
+                    long end = System.nanoTime();
+                    for (int j = 0; j < batch.size(); j++) {
+                        String tokens = results.get(j).best().getClassName();
+                        classes[batch.get(j)] = tokens.substring(tokens.indexOf(' ') + 1);
+                        latencies[batch.get(j)] = (end - compute_begin) / nanosecInSec;
+                    }
+                    classified += batch.size();
+                    inference_time += (end - predict_begin) / nanosecInSec;
+                    batches.add(Map.of("size", batch.size(),
+                                       "load_time", (predict_begin - begin) / nanosecInSec,
+                                       "inference_time", (end - predict_begin) / nanosecInSec,
+                                       "time_per_image", (end - begin) / nanosecInSec / batch.size()));
+                }
+            } finally {
+                pool.release(predictor);
+            }
+        }
+        double process_time = phases.end() / nanosecInSec;
+
+        List<Map<String, Object>> images = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Map<String, Object> image = new LinkedHashMap<>();
+            image.put("file", files.get(i));
+            image.put("class", classes[i] != null ? classes[i] : "");
+            image.put("download_time", download_times[i]);
+            image.put("latency", latencies[i]);
+            if (errors[i] != null) {
+                image.put("error", errors[i]);
+            }
+            images.add(image);
+            if (key_paths[i] != null) {
+                Files.deleteIfExists(Paths.get(key_paths[i]));
+            }
+        }
+
+        retVal.put("measurement", Map.of("download_time", image_download_time + load.modelDownloadTime() + load.synsetDownloadTime(),
+                                         "compute_time", process_time + load.modelTime(),
+                                         "model_time", load.modelTime(),
+                                         "model_download_time", load.modelDownloadTime(),
+                                         "inference_time", inference_time,
+                                         "cold", load.cold(),
+                                         "predictors", pool != null ? pool.size() : 0,
+                                         "images", classified,
+                                         "batch_size", batch_size,
+                                         "images_per_second", process_time > 0.0 ? classified / process_time : 0.0));
+        retVal.put("batches", batches);
+        retVal.put("output", images);
+        retVal.put("warmup", warmup);
+        return retVal;
+    }
+
+    private record ModelLoad(PredictorPool pool, boolean cold, double synsetDownloadTime, double modelDownloadTime, double modelTime) {
+    }
+
+    /*
+     * Returns the model of the request, downloading and loading it first if no request did so before.
+     * pool is null if the model could not be loaded.
+     */
+    private ModelLoad loadModel(FunInput input, PhaseTimer phases) {
+        String model_id = modelId(input.model, input.synset);
+        PredictorPool pool = models.get(model_id);
+        if (pool != null) {
+            return new ModelLoad(pool, false, 0.0, 0.0, 0.0);
+        }
+
+        String model_key = "input/" + input.model;
+        String model_key_path = String.join("/", "/tmp", input.model);
+
+        String synset = "input/" + input.synset;
+        String synset_path = String.join("/", "/tmp", input.synset);
+
+        synchronized(lock) {
+            pool = models.get(model_id);
+            if (pool != null) {
+                return new ModelLoad(pool, false, 0.0, 0.0, 0.0);
+            }
+            phases.begin(PhaseTimer.DOWNLOAD);
+            phases.begin("synset");
+            try {
+                downloadFile(input.bucket, synset, synset_path);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            double synset_download_time = phases.end() / nanosecInSec;
+
+            phases.begin("model");
+            try {
+                downloadFile(input.bucket, model_key, model_key_path);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            double model_download_time = phases.end() / nanosecInSec;
+            phases.end();
+
+            phases.begin(PhaseTimer.SETUP);
+            try {
+                pool = PredictorPool.load(Paths.get(model_key_path), Paths.get(synset_path));
+                models.put(model_id, pool);
+            } catch (ModelNotFoundException | MalformedModelException | IOException e) {
+                e.printStackTrace();
+            }
+            double model_process_time = phases.end() / nanosecInSec;
+            return new ModelLoad(pool, pool != null, synset_download_time, model_download_time, model_process_time);
+        }
+    }
+
+    public Map<String, Object> downloadFile(String bucket, String key, String filePath) throws Exception {
         File theFile = new File(filePath);
         File theDir = theFile.getParentFile();
         if (!theDir.exists()) {
             theDir.mkdirs();
         }
-        try (InputStream is = blobStore.getBlob(bucket, key).getPayload().openStream();
-             OutputStream os = new FileOutputStream(theFile)) {
-            byte[] buffer = new byte[8192];
-            int bytesRead;
-            while ((bytesRead = is.read(buffer)) != -1) {
-                os.write(buffer, 0, bytesRead);
-            }
-        }
+        return BlobCache.fetch(blobStore, bucket, key, theFile.toPath());
     }
 }
@@ -0,0 +1,26 @@
+package com.ibm.trl.serverlessbench;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import org.eclipse.microprofile.health.HealthCheck;
+import org.eclipse.microprofile.health.HealthCheckResponse;
+import org.eclipse.microprofile.health.Readiness;
+
+/*
+ * Reports the container as not ready while the model set by PRELOAD_MODEL and PRELOAD_SYNSET is loaded
+ * and warmed up at startup, so that no request is routed to it before. Without a preload it is ready at
+ * once. A failed preload makes it ready as well, and the model is then loaded by the first request.
+ */
+@Readiness
+@ApplicationScoped
+public class ModelReadiness implements HealthCheck {
+
+    @Override
+    public HealthCheckResponse call() {
+        String model = ImageRecognition.preloadedModel();
+        return HealthCheckResponse.named("model-warmup")
+            .status(!ImageRecognition.preloading())
+            .withData("preloaded", model != null ? model : "")
+            .withData("warmup_time", String.valueOf(ImageRecognition.warmupTime()))
+            .build();
+    }
+}
@@ -0,0 +1,75 @@
+package com.ibm.trl.serverlessbench;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ai.djl.MalformedModelException;
+import ai.djl.inference.Predictor;
+import ai.djl.modality.Classifications;
+import ai.djl.modality.cv.Image;
+import ai.djl.modality.cv.transform.CenterCrop;
+import ai.djl.modality.cv.transform.Normalize;
+import ai.djl.modality.cv.transform.Resize;
+import ai.djl.modality.cv.transform.ToTensor;
+import ai.djl.modality.cv.translator.ImageClassificationTranslator;
+import ai.djl.repository.zoo.Criteria;
+import ai.djl.repository.zoo.ModelNotFoundException;
+import ai.djl.repository.zoo.ZooModel;
+import ai.djl.translate.Translator;
+
+/*
+ * A ZooModel that is loaded once, with its translator, and kept for the lifetime of the container.
+ * A Predictor must not be used by two threads at once, so every request borrows one from the pool and
+ * returns it afterwards. The pool creates a Predictor only when all existing ones are borrowed, which
+ * makes it grow to the highest number of concurrent requests and no further.
+ */
+final class PredictorPool {
+
+    private final ZooModel<Image, Classifications> model;
+    private final ConcurrentLinkedQueue<Predictor<Image, Classifications>> idle = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger created = new AtomicInteger();
+
+    private PredictorPool(ZooModel<Image, Classifications> model) {
+        this.model = model;
+    }
+
+    static PredictorPool load(Path modelPath, Path synsetPath) throws ModelNotFoundException, MalformedModelException, IOException {
+        Translator<Image, Classifications> translator = ImageClassificationTranslator.builder()
+            .addTransform(new Resize(256))
+            .addTransform(new CenterCrop(224, 224))
+            .addTransform(new ToTensor())
+            .addTransform(new Normalize(
+                    new float[] {0.485f, 0.456f, 0.406f}, /*mean*/
+                    new float[] {0.229f, 0.224f, 0.225f}) /*std*/)
+            .optApplySoftmax(true)
+            .optSynsetUrl("file:" + synsetPath)
+            .build();
+
+        Criteria<Image, Classifications> criteria = Criteria.builder()
+            .setTypes(Image.class, Classifications.class)
+            .optModelPath(modelPath)
+            .optTranslator(translator)
+            .build();
+        return new PredictorPool(criteria.loadModel());
+    }
+
+    Predictor<Image, Classifications> borrow() {
+        Predictor<Image, Classifications> predictor = idle.poll();
+        if (predictor == null) {
+            created.incrementAndGet();
+            predictor = model.newPredictor();
+        }
+        return predictor;
+    }
+
+    void release(Predictor<Image, Classifications> predictor) {
+        idle.offer(predictor);
+    }
+
+    // Predictors created so far, the highest concurrency seen
+    int size() {
+        return created.get();
+    }
+}
@@ -15,8 +15,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.stream.Stream;
 
-import com.ibm.trl.serverlessbench.wrapper.BenchmarkStorageUtil;
 import com.ibm.trl.serverlessbench.wrapper.BenchmarkWrapper;
+import com.ibm.trl.serverlessbench.wrapper.PhaseTimer;
+import com.ibm.trl.serverlessbench.wrapper.RecordingRequest;
 
 import io.quarkus.runtime.StartupEvent;
 import jakarta.enterprise.event.Observes;
@@ -34,18 +35,29 @@ public class Network {
     private static String bucket;
 
 
-    void onStart(@Observes StartupEvent ev) {
-        blobStore = BenchmarkStorageUtil.setupStorage();
+    void onStart(@Observes StartupEvent ev, BlobStore sharedBlobStore) {
+        blobStore = sharedBlobStore;
         bucket = System.getenv("STORAGE_BUCKET");
     }
 
-    public static class FunInput {
+    public static class FunInput implements RecordingRequest {
         public String request_id;
         public String server_address;
         public int server_port;
         public int repetitions;
         public String bucket;
         public boolean debug;
+        public boolean jfr;
+
+        @Override
+        public boolean jfr() {
+            return jfr;
+        }
+
+        @Override
+        public String bucket() {
+            return bucket;
+        }
     }
 
     @Funq
@@ -64,7 +76,8 @@ public class Network {
         String request_id = input.request_id;
         int port = input.server_port;
 
-        long processTimeBegin = System.nanoTime();
+        PhaseTimer phases = PhaseTimer.current();
+        phases.begin(PhaseTimer.COMPUTE);
         List<Long[]> times = new ArrayList<>();
         int i = 0;
 
@@ -143,9 +156,9 @@ public class Network {
         } catch (SocketException e) {
             e.printStackTrace();
         }
-        long processTimeEnd = System.nanoTime();
+        double process_time = phases.end() / nanosecInSec;
 
-        retVal.put("measurement", Map.of("process_time", (processTimeEnd - processTimeBegin) / nanosecInSec));
+        retVal.put("measurement", Map.of("process_time", process_time));
         retVal.put("output", key);
         return retVal;
     }
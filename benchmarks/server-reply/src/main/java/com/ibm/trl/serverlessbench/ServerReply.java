@@ -14,6 +14,7 @@ import java.io.DataInputStream;
 import java.util.concurrent.TimeUnit;
 
 import com.ibm.trl.serverlessbench.wrapper.BenchmarkWrapper;
+import com.ibm.trl.serverlessbench.wrapper.PhaseTimer;
 
 import org.jboss.logging.Logger;
 
@@ -52,7 +53,8 @@ public class ServerReply {
             log.error("Server didn't launch: ", e);
         }
 
-        long processTimeBegin = System.nanoTime();
+        PhaseTimer phases = PhaseTimer.current();
+        phases.begin(PhaseTimer.COMPUTE);
 
         int readSize = 0;
         String line = "";
@@ -69,11 +71,11 @@ public class ServerReply {
             line = "IOException: " + e;
         }
 
-        long processTimeEnd = System.nanoTime();
+        double process_time = phases.end() / nanosecInSec;
 
         proc.destroy();
 
-        retVal.put("measurement", Map.of("process_time", (processTimeEnd - processTimeBegin) / nanosecInSec));
+        retVal.put("measurement", Map.of("process_time", process_time));
         retVal.put("output", Map.of("result", line,
                                     "size", readSize + ""));
 
@@ -5,6 +5,7 @@ import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 import com.ibm.trl.serverlessbench.wrapper.BenchmarkWrapper;
+import com.ibm.trl.serverlessbench.wrapper.PhaseTimer;
 
 import org.jboss.logging.Logger;
 
@@ -31,16 +32,17 @@ public class Sleep {
                 sleep_time = st;
             }
         }
-        long processTimeBegin = System.nanoTime();
+        PhaseTimer phases = PhaseTimer.current();
+        phases.begin(PhaseTimer.COMPUTE);
 
         try {
             TimeUnit.SECONDS.sleep(sleep_time);
         } catch (InterruptedException e) {
             e.printStackTrace();
         }
-        long processTimeEnd = System.nanoTime();
+        double process_time = phases.end() / nanosecInSec;
 
-        retVal.put("measurement", Map.of("compute_time", (processTimeEnd - processTimeBegin) / nanosecInSec));
+        retVal.put("measurement", Map.of("compute_time", process_time));
         retVal.put("sleep_time", sleep_time);
         
         log.debug("retVal.measurement="+retVal.get("measurement"));
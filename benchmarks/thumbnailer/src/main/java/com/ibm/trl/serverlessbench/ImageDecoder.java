@@ -0,0 +1,113 @@
+package com.ibm.trl.serverlessbench;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.spi.IIORegistry;
+import javax.imageio.spi.ImageReaderSpi;
+import javax.imageio.stream.ImageInputStream;
+
+/*
+ * Decodes images close to the size they are resized to. The source is subsampled while it is decoded,
+ * keeping every n-th pixel such that the decoded image is still at least SUBSAMPLING_MARGIN times the
+ * target size in both dimensions, which leaves the final filtering to the Resampler. A source region
+ * restricts decoding to a crop of the image.
+ *
+ * ImageReaders are pooled per format instead of being created for every image, and ImageIO is told
+ * not to cache streams in temporary files.
+ */
+final class ImageDecoder {
+
+    private static final int SUBSAMPLING_MARGIN = 2;
+
+    private static final Map<ImageReaderSpi, ConcurrentLinkedQueue<ImageReader>> readers = new ConcurrentHashMap<>();
+
+    static {
+        ImageIO.setUseCache(false);
+    }
+
+    record Decoded(BufferedImage image, int sourceWidth, int sourceHeight, int subsampling) {
+    }
+
+    private ImageDecoder() {
+    }
+
+    /*
+     * region is null for the whole image. With subsample false the image is decoded at full resolution.
+     */
+    static Decoded decode(InputStream in, int width, int height, Rectangle region, boolean subsample) throws IOException {
+        try (ImageInputStream iis = ImageIO.createImageInputStream(in)) {
+            ImageReaderSpi provider = provider(iis);
+            ImageReader reader = borrow(provider);
+            boolean reusable = false;
+            try {
+                reader.setInput(iis, true, true);
+                int sourceWidth = reader.getWidth(0);
+                int sourceHeight = reader.getHeight(0);
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                Rectangle source = new Rectangle(sourceWidth, sourceHeight);
+                if (region != null) {
+                    source = source.intersection(region);
+                    if (source.isEmpty()) {
+                        throw new IOException("Region " + region + " is outside of the " + sourceWidth + "x" + sourceHeight + " image");
+                    }
+                    param.setSourceRegion(source);
+                }
+                int subsampling = 1;
+                if (subsample && (width > 0 || height > 0)) {
+                    // a negative width or height follows the aspect ratio, so only the other one limits the subsampling
+                    subsampling = Math.max(1, Math.min(width > 0 ? source.width / (SUBSAMPLING_MARGIN * width) : Integer.MAX_VALUE,
+                                                       height > 0 ? source.height / (SUBSAMPLING_MARGIN * height) : Integer.MAX_VALUE));
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                }
+
+                BufferedImage image = reader.read(0, param);
+                reusable = true;
+                return new Decoded(image, sourceWidth, sourceHeight, subsampling);
+            } finally {
+                release(provider, reader, reusable);
+            }
+        }
+    }
+
+    private static ImageReaderSpi provider(ImageInputStream iis) throws IOException {
+        if (iis == null) {
+            throw new IOException("Unable to read image stream");
+        }
+        Iterator<ImageReaderSpi> providers = IIORegistry.getDefaultInstance().getServiceProviders(ImageReaderSpi.class, true);
+        while (providers.hasNext()) {
+            ImageReaderSpi provider = providers.next();
+            if (provider.canDecodeInput(iis)) {
+                return provider;
+            }
+        }
+        throw new IOException("Unsupported image format");
+    }
+
+    private static ImageReader borrow(ImageReaderSpi provider) throws IOException {
+        ImageReader reader = readers.computeIfAbsent(provider, p -> new ConcurrentLinkedQueue<>()).poll();
+        return reader != null ? reader : provider.createReaderInstance();
+    }
+
+    /*
+     * A reader that failed may be in an inconsistent state and is disposed rather than pooled.
+     */
+    private static void release(ImageReaderSpi provider, ImageReader reader, boolean reusable) {
+        if (reusable) {
+            reader.reset();
+            readers.get(provider).offer(reader);
+        } else {
+            reader.dispose();
+        }
+    }
+}
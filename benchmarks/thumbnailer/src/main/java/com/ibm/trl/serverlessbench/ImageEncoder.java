@@ -0,0 +1,87 @@
+package com.ibm.trl.serverlessbench;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+import com.google.common.io.ByteSource;
+
+/*
+ * Encodes images as JPEG once, with ImageWriters taken from a pool. The encoded bytes are kept in the
+ * buffer they were written to, so that the same buffer serves both for the size and as the upload
+ * payload without being copied.
+ */
+final class ImageEncoder {
+
+    static final float DEFAULT_QUALITY = 0.75f;
+
+    private static final ConcurrentLinkedQueue<ImageWriter> writers = new ConcurrentLinkedQueue<>();
+
+    record Encoded(byte[] buffer, int length) {
+        ByteSource bytes() {
+            return ByteSource.wrap(buffer).slice(0, length);
+        }
+    }
+
+    // exposes its buffer instead of copying it in toByteArray()
+    private static final class Buffer extends ByteArrayOutputStream {
+        Buffer(int size) {
+            super(size);
+        }
+
+        Encoded encoded() {
+            return new Encoded(buf, count);
+        }
+    }
+
+    private ImageEncoder() {
+    }
+
+    static Encoded encode(BufferedImage image, float quality) throws IOException {
+        ImageWriter writer = borrow();
+        boolean reusable = false;
+        // a JPEG thumbnail rarely exceeds one byte per pixel
+        Buffer buffer = new Buffer(Math.max(1024, image.getWidth() * image.getHeight()));
+        try (ImageOutputStream ios = new MemoryCacheImageOutputStream(buffer)) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            writer.setOutput(ios);
+            writer.write(null, new IIOImage(image, null, null), param);
+            reusable = true;
+        } finally {
+            release(writer, reusable);
+        }
+        return buffer.encoded();
+    }
+
+    private static ImageWriter borrow() throws IOException {
+        ImageWriter writer = writers.poll();
+        if (writer != null) {
+            return writer;
+        }
+        Iterator<ImageWriter> candidates = ImageIO.getImageWritersByFormatName("jpg");
+        if (!candidates.hasNext()) {
+            throw new IOException("No JPEG ImageWriter available");
+        }
+        return candidates.next();
+    }
+
+    private static void release(ImageWriter writer, boolean reusable) {
+        if (reusable) {
+            writer.reset();
+            writers.offer(writer);
+        } else {
+            writer.dispose();
+        }
+    }
+}
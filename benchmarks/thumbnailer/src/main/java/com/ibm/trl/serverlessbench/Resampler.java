@@ -0,0 +1,291 @@
+package com.ibm.trl.serverlessbench;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.util.Locale;
+import java.util.stream.IntStream;
+
+/*
+ * Resizes images on their packed RGB pixels instead of through Image.getScaledInstance() and Graphics2D.
+ *
+ * The image is scaled separably, first horizontally and then vertically, each output pixel being the
+ * weighted sum of the source pixels under the filter. When shrinking, the filter is widened by the
+ * scale factor so that every source pixel contributes (no aliasing). Since that makes the cost per output
+ * pixel grow with the ratio, bilinear and Lanczos first halve the image with a 2x2 average while it is at
+ * least four times the target size. Both passes and the halving are split into bands of rows that are
+ * processed in parallel on the common ForkJoinPool.
+ *
+ * As with Image.getScaledInstance(), a negative width or height is derived from the other one so that the
+ * aspect ratio is kept, and if both are negative the image keeps its size.
+ */
+final class Resampler {
+
+    enum Filter {
+        // area average
+        BOX(0.5),
+        BILINEAR(1.0),
+        LANCZOS(3.0);
+
+        final double support;
+
+        Filter(double support) {
+            this.support = support;
+        }
+
+        double weight(double x) {
+            x = Math.abs(x);
+            switch (this) {
+                case BOX:
+                    return x < 0.5 ? 1.0 : 0.0;
+                case BILINEAR:
+                    return x < 1.0 ? 1.0 - x : 0.0;
+                default:
+                    if (x == 0.0) {
+                        return 1.0;
+                    }
+                    if (x >= support) {
+                        return 0.0;
+                    }
+                    double px = Math.PI * x;
+                    return support * Math.sin(px) * Math.sin(px / support) / (px * px);
+            }
+        }
+
+        static Filter of(String name) {
+            return valueOf(name.toUpperCase(Locale.ROOT));
+        }
+
+        static boolean exists(String name) {
+            for (Filter filter : values()) {
+                if (filter.name().equals(name.toUpperCase(Locale.ROOT))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    // rows per band of parallel work
+    private static final int BAND_ROWS = 32;
+
+    private Resampler() {
+    }
+
+    static BufferedImage resize(BufferedImage image, int width, int height, Filter filter) {
+        int w = image.getWidth();
+        int h = image.getHeight();
+        Dimension size = targetSize(w, h, width, height);
+        width = size.width;
+        height = size.height;
+        int[] pixels = pixels(image);
+
+        if (filter != Filter.BOX) {
+            while (w >= 4 * width && h >= 4 * height) {
+                pixels = halve(pixels, w, h);
+                w /= 2;
+                h /= 2;
+            }
+        }
+
+        BufferedImage resized = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] out = ((DataBufferInt) resized.getRaster().getDataBuffer()).getData();
+        int[] horizontal = new int[width * h];
+        scaleRows(pixels, w, h, horizontal, width, weights(w, width, filter));
+        scaleColumns(horizontal, width, h, out, height, weights(h, height, filter));
+        return resized;
+    }
+
+    static Dimension targetSize(int w, int h, int width, int height) {
+        if (width == 0 || height == 0) {
+            throw new IllegalArgumentException("Width (" + width + ") and height (" + height + ") must not be 0");
+        }
+        if (width < 0 && height < 0) {
+            return new Dimension(w, h);
+        }
+        if (width < 0) {
+            width = (int) Math.max(1L, Math.round((double) w * height / h));
+        } else if (height < 0) {
+            height = (int) Math.max(1L, Math.round((double) h * width / w));
+        }
+        return new Dimension(width, height);
+    }
+
+    /*
+     * Returns the pixels as packed RGB, without copying if the image already stores them that way.
+     */
+    static int[] pixels(BufferedImage image) {
+        int w = image.getWidth();
+        int h = image.getHeight();
+        switch (image.getType()) {
+            case BufferedImage.TYPE_INT_RGB:
+            case BufferedImage.TYPE_INT_ARGB:
+                if (image.getRaster().getSampleModel() instanceof SinglePixelPackedSampleModel model
+                        && model.getScanlineStride() == w
+                        && image.getRaster().getSampleModelTranslateX() == 0
+                        && image.getRaster().getSampleModelTranslateY() == 0) {
+                    return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+                }
+                break;
+            case BufferedImage.TYPE_3BYTE_BGR:
+                if (image.getRaster().getDataBuffer().getSize() == 3 * w * h) {
+                    byte[] bgr = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+                    int[] pixels = new int[w * h];
+                    bands(h, (from, to) -> {
+                        for (int i = from * w, j = 3 * from * w; i < to * w; i++, j += 3) {
+                            pixels[i] = (bgr[j + 2] & 0xff) << 16 | (bgr[j + 1] & 0xff) << 8 | (bgr[j] & 0xff);
+                        }
+                    });
+                    return pixels;
+                }
+                break;
+            case BufferedImage.TYPE_BYTE_GRAY:
+                if (image.getRaster().getDataBuffer().getSize() == w * h) {
+                    byte[] gray = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+                    int[] pixels = new int[w * h];
+                    bands(h, (from, to) -> {
+                        for (int i = from * w; i < to * w; i++) {
+                            int g = gray[i] & 0xff;
+                            pixels[i] = g << 16 | g << 8 | g;
+                        }
+                    });
+                    return pixels;
+                }
+                break;
+            default:
+                break;
+        }
+        return image.getRGB(0, 0, w, h, null, 0, w);
+    }
+
+    private static int[] halve(int[] src, int w, int h) {
+        int hw = w / 2;
+        int hh = h / 2;
+        int[] dst = new int[hw * hh];
+        bands(hh, (from, to) -> {
+            for (int y = from; y < to; y++) {
+                int row0 = 2 * y * w;
+                int row1 = row0 + w;
+                for (int x = 0; x < hw; x++) {
+                    int a = src[row0 + 2 * x];
+                    int b = src[row0 + 2 * x + 1];
+                    int c = src[row1 + 2 * x];
+                    int d = src[row1 + 2 * x + 1];
+                    int r = ((a >> 16 & 0xff) + (b >> 16 & 0xff) + (c >> 16 & 0xff) + (d >> 16 & 0xff) + 2) >> 2;
+                    int g = ((a >> 8 & 0xff) + (b >> 8 & 0xff) + (c >> 8 & 0xff) + (d >> 8 & 0xff) + 2) >> 2;
+                    int bl = ((a & 0xff) + (b & 0xff) + (c & 0xff) + (d & 0xff) + 2) >> 2;
+                    dst[y * hw + x] = r << 16 | g << 8 | bl;
+                }
+            }
+        });
+        return dst;
+    }
+
+    /*
+     * The source pixels contributing to every output pixel: output i uses the sources
+     * start[i] .. start[i] + count[i] - 1 with the weights at i * stride.
+     */
+    private record Weights(int[] start, int[] count, float[] weights, int stride) {
+    }
+
+    private static Weights weights(int srcSize, int dstSize, Filter filter) {
+        double scale = (double) srcSize / dstSize;
+        double filterScale = Math.max(1.0, scale);
+        double support = filter.support * filterScale;
+        int stride = (int) Math.ceil(support) * 2 + 1;
+
+        int[] start = new int[dstSize];
+        int[] count = new int[dstSize];
+        float[] weights = new float[dstSize * stride];
+        for (int i = 0; i < dstSize; i++) {
+            double center = (i + 0.5) * scale;
+            int lo = Math.max(0, (int) Math.floor(center - support));
+            int hi = Math.min(srcSize, (int) Math.ceil(center + support));
+            hi = Math.min(hi, lo + stride);
+            double sum = 0.0;
+            for (int j = lo; j < hi; j++) {
+                sum += filter.weight((j + 0.5 - center) / filterScale);
+            }
+            if (sum == 0.0) {
+                // the filter falls between two source pixels: take the nearest one
+                lo = Math.min(srcSize - 1, (int) center);
+                hi = lo + 1;
+                weights[i * stride] = 1.0f;
+            } else {
+                for (int j = lo; j < hi; j++) {
+                    weights[i * stride + j - lo] = (float) (filter.weight((j + 0.5 - center) / filterScale) / sum);
+                }
+            }
+            start[i] = lo;
+            count[i] = hi - lo;
+        }
+        return new Weights(start, count, weights, stride);
+    }
+
+    private static void scaleRows(int[] src, int sw, int h, int[] dst, int dw, Weights weights) {
+        bands(h, (from, to) -> {
+            for (int y = from; y < to; y++) {
+                int row = y * sw;
+                for (int x = 0; x < dw; x++) {
+                    float r = 0.0f;
+                    float g = 0.0f;
+                    float b = 0.0f;
+                    int offset = x * weights.stride();
+                    int first = row + weights.start()[x];
+                    for (int k = 0; k < weights.count()[x]; k++) {
+                        int p = src[first + k];
+                        float weight = weights.weights()[offset + k];
+                        r += (p >> 16 & 0xff) * weight;
+                        g += (p >> 8 & 0xff) * weight;
+                        b += (p & 0xff) * weight;
+                    }
+                    dst[y * dw + x] = pack(r, g, b);
+                }
+            }
+        });
+    }
+
+    private static void scaleColumns(int[] src, int w, int sh, int[] dst, int dh, Weights weights) {
+        bands(dh, (from, to) -> {
+            for (int y = from; y < to; y++) {
+                int offset = y * weights.stride();
+                int first = weights.start()[y];
+                int count = weights.count()[y];
+                for (int x = 0; x < w; x++) {
+                    float r = 0.0f;
+                    float g = 0.0f;
+                    float b = 0.0f;
+                    for (int k = 0; k < count; k++) {
+                        int p = src[(first + k) * w + x];
+                        float weight = weights.weights()[offset + k];
+                        r += (p >> 16 & 0xff) * weight;
+                        g += (p >> 8 & 0xff) * weight;
+                        b += (p & 0xff) * weight;
+                    }
+                    dst[y * w + x] = pack(r, g, b);
+                }
+            }
+        });
+    }
+
+    private static int pack(float r, float g, float b) {
+        return clamp(r) << 16 | clamp(g) << 8 | clamp(b);
+    }
+
+    // Lanczos has negative lobes, so sums may leave 0..255
+    private static int clamp(float v) {
+        int i = Math.round(v);
+        return i < 0 ? 0 : Math.min(i, 255);
+    }
+
+    private interface Band {
+        void rows(int from, int to);
+    }
+
+    private static void bands(int rows, Band band) {
+        int bands = (rows + BAND_ROWS - 1) / BAND_ROWS;
+        IntStream.range(0, bands).parallel().forEach(i -> band.rows(i * BAND_ROWS, Math.min(rows, (i + 1) * BAND_ROWS)));
+    }
+}
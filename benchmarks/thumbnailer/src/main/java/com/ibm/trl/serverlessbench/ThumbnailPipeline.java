@@ -0,0 +1,243 @@
+package com.ibm.trl.serverlessbench;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jboss.logging.Logger;
+import org.jclouds.blobstore.BlobStore;
+import org.jclouds.blobstore.domain.Blob;
+import org.jclouds.io.Payload;
+import org.jclouds.io.Payloads;
+
+/*
+ * Bulk mode of Thumbnailer: download -> decode -> resize -> encode -> upload, every stage with its own
+ * virtual threads, connected by bounded queues. A stage that is faster than the next one blocks once
+ * the queue between them is full, so at most (workers + queue size) images are held per stage no
+ * matter how many images there are.
+ *
+ * For every stage the time the images waited in its input queue (the stage is the bottleneck if this
+ * is high), the time it was busy, and the time it was blocked on the full queue to the next stage
+ * (the next stage is the bottleneck) are reported. A failing image is counted and skipped.
+ */
+final class ThumbnailPipeline {
+    private static final double nanosecInSec = 1_000_000_000.0;
+
+    private static final Logger log = Logger.getLogger(ThumbnailPipeline.class);
+
+    private record Item(String key, Object value, long enqueued) {
+    }
+
+    // passed on by the last worker of a stage after its input is exhausted
+    private static final Item END = new Item(null, null, 0L);
+
+    private interface Step {
+        Object apply(String key, Object value) throws Exception;
+    }
+
+    private static final class Stage {
+        final String name;
+        final int workers;
+        final AtomicInteger active;
+        final LongAdder items = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAdder queueNanos = new LongAdder();
+        final LongAdder busyNanos = new LongAdder();
+        final LongAdder blockedNanos = new LongAdder();
+
+        Stage(String name, int workers) {
+            this.name = name;
+            this.workers = workers;
+            this.active = new AtomicInteger(workers);
+        }
+
+        Map<String, Object> toMap() {
+            long n = Math.max(1L, items.sum());
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("workers", workers);
+            map.put("items", items.sum());
+            map.put("errors", errors.sum());
+            map.put("queue_time", queueNanos.sum() / nanosecInSec);
+            map.put("mean_queue_time", queueNanos.sum() / nanosecInSec / n);
+            map.put("busy_time", busyNanos.sum() / nanosecInSec);
+            map.put("blocked_time", blockedNanos.sum() / nanosecInSec);
+            return map;
+        }
+    }
+
+    private final Thumbnailer thumbnailer;
+    private final BlobStore blobStore;
+    private final String bucket;
+    private final Thumbnailer.FunInput input;
+    private final int ioWorkers;
+    private final int cpuWorkers;
+    private final int queueSize;
+
+    private final LongAdder downloadBytes = new LongAdder();
+    private final LongAdder uploadBytes = new LongAdder();
+
+    ThumbnailPipeline(Thumbnailer thumbnailer, BlobStore blobStore, Thumbnailer.FunInput input, int ioWorkers, int cpuWorkers, int queueSize) {
+        this.thumbnailer = thumbnailer;
+        this.blobStore = blobStore;
+        this.bucket = input.bucket;
+        this.input = input;
+        this.ioWorkers = ioWorkers;
+        this.cpuWorkers = cpuWorkers;
+        this.queueSize = queueSize;
+    }
+
+    Map<String, Object> run(List<String> keys) throws InterruptedException {
+        String filter = input.filter != null ? input.filter : Thumbnailer.DEFAULT_FILTER;
+        float quality = input.quality != null ? input.quality : ImageEncoder.DEFAULT_QUALITY;
+        boolean subsample = input.subsample == null || input.subsample;
+
+        Stage download = new Stage("download", ioWorkers);
+        Stage decode = new Stage("decode", cpuWorkers);
+        Stage resize = new Stage("resize", cpuWorkers);
+        Stage encode = new Stage("encode", cpuWorkers);
+        Stage upload = new Stage("upload", ioWorkers);
+        BlockingQueue<Item> downloaded = new ArrayBlockingQueue<>(queueSize);
+        BlockingQueue<Item> decoded = new ArrayBlockingQueue<>(queueSize);
+        BlockingQueue<Item> resized = new ArrayBlockingQueue<>(queueSize);
+        BlockingQueue<Item> encoded = new ArrayBlockingQueue<>(queueSize);
+        AtomicInteger nextKey = new AtomicInteger();
+
+        long begin = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < ioWorkers; i++) {
+                executor.execute(() -> download(download, keys, nextKey, downloaded));
+            }
+            for (int i = 0; i < cpuWorkers; i++) {
+                executor.execute(() -> work(decode, downloaded, decoded, (key, value) -> {
+                    try (InputStream in = new ByteArrayInputStream((byte[]) value)) {
+                        return ImageDecoder.decode(in, input.width, input.height, null, subsample).image();
+                    }
+                }));
+                executor.execute(() -> work(resize, decoded, resized,
+                        (key, value) -> thumbnailer.resize_image((BufferedImage) value, input.width, input.height, filter)));
+                executor.execute(() -> work(encode, resized, encoded,
+                        (key, value) -> ImageEncoder.encode((BufferedImage) value, quality)));
+            }
+            for (int i = 0; i < ioWorkers; i++) {
+                executor.execute(() -> work(upload, encoded, null, (key, value) -> {
+                    ImageEncoder.Encoded image = (ImageEncoder.Encoded) value;
+                    uploadBytes.add(image.length());
+                    if (input.debug) {
+                        Payload payload = Payloads.newByteSourcePayload(image.bytes());
+                        payload.getContentMetadata().setContentLength((long) image.length());
+                        String name = key.substring(key.lastIndexOf('/') + 1);
+                        blobStore.putBlob(bucket, blobStore.blobBuilder("output/resized-" + name).payload(payload).build());
+                    }
+                    return null;
+                }));
+            }
+        }
+        long elapsed = System.nanoTime() - begin;
+
+        long images = upload.items.sum();
+        long errors = download.errors.sum() + decode.errors.sum() + resize.errors.sum() + encode.errors.sum() + upload.errors.sum();
+        Map<String, Object> stages = new LinkedHashMap<>();
+        for (Stage stage : List.of(download, decode, resize, encode, upload)) {
+            stages.put(stage.name, stage.toMap());
+        }
+        Map<String, Object> retVal = new LinkedHashMap<>();
+        retVal.put("images", images);
+        retVal.put("errors", errors);
+        retVal.put("time", elapsed / nanosecInSec);
+        retVal.put("images_per_second", images / (elapsed / nanosecInSec));
+        retVal.put("download_size", downloadBytes.sum());
+        retVal.put("upload_size", uploadBytes.sum());
+        retVal.put("queue_size", queueSize);
+        retVal.put("stages", stages);
+        return retVal;
+    }
+
+    private void download(Stage stage, List<String> keys, AtomicInteger nextKey, BlockingQueue<Item> out) {
+        try {
+            int index;
+            while ((index = nextKey.getAndIncrement()) < keys.size()) {
+                String key = keys.get(index);
+                long begin = System.nanoTime();
+                byte[] bytes;
+                try {
+                    Blob blob = blobStore.getBlob(bucket, key);
+                    if (blob == null)
+                        throw new FileNotFoundException("ERROR: Bucket or File not found: " + bucket + "/" + key);
+                    try (InputStream in = blob.getPayload().openStream()) {
+                        bytes = in.readAllBytes();
+                    }
+                } catch (Exception e) {
+                    stage.errors.increment();
+                    log.warn("Downloading " + key + " failed: " + e);
+                    continue;
+                }
+                stage.busyNanos.add(System.nanoTime() - begin);
+                stage.items.increment();
+                downloadBytes.add(bytes.length);
+                put(stage, out, new Item(key, bytes, System.nanoTime()));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            finish(stage, out);
+        }
+    }
+
+    private void work(Stage stage, BlockingQueue<Item> in, BlockingQueue<Item> out, Step step) {
+        try {
+            while (true) {
+                Item item = in.take();
+                if (item == END) {
+                    // for the other workers of this stage
+                    in.put(END);
+                    break;
+                }
+                stage.queueNanos.add(System.nanoTime() - item.enqueued());
+                long begin = System.nanoTime();
+                Object result;
+                try {
+                    result = step.apply(item.key(), item.value());
+                } catch (Exception e) {
+                    stage.errors.increment();
+                    log.warn(stage.name + " of " + item.key() + " failed: " + e);
+                    continue;
+                }
+                stage.busyNanos.add(System.nanoTime() - begin);
+                stage.items.increment();
+                if (out != null) {
+                    put(stage, out, new Item(item.key(), result, System.nanoTime()));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            finish(stage, out);
+        }
+    }
+
+    private static void put(Stage stage, BlockingQueue<Item> out, Item item) throws InterruptedException {
+        long begin = System.nanoTime();
+        out.put(item);
+        stage.blockedNanos.add(System.nanoTime() - begin);
+    }
+
+    private static void finish(Stage stage, BlockingQueue<Item> out) {
+        if (stage.active.decrementAndGet() == 0 && out != null) {
+            try {
+                out.put(END);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -1,95 +1,295 @@
 package com.ibm.trl.serverlessbench;
 
 import java.awt.Image;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
-import javax.imageio.ImageIO;
-
-import com.ibm.trl.serverlessbench.wrapper.BenchmarkStorageUtil;
 import com.ibm.trl.serverlessbench.wrapper.BenchmarkWrapper;
+import com.ibm.trl.serverlessbench.wrapper.BlobLister;
+import com.ibm.trl.serverlessbench.wrapper.PhaseTimer;
+import com.ibm.trl.serverlessbench.wrapper.RecordingRequest;
 
 import io.quarkus.funqy.Funq;
 
 import io.quarkus.runtime.StartupEvent;
 import jakarta.enterprise.event.Observes;
 import org.jclouds.blobstore.BlobStore;
+import org.jclouds.blobstore.domain.Blob;
+import org.jclouds.blobstore.domain.StorageMetadata;
+import org.jclouds.blobstore.domain.StorageType;
+import org.jclouds.io.Payload;
 import org.jclouds.io.Payloads;
-import org.jclouds.io.payloads.InputStreamPayload;
 
 public class Thumbnailer {
     private static final double nanosecInSec = 1_000_000_000.0;
+    static final String DEFAULT_FILTER = "bilinear";
+    private static final int DEFAULT_PARALLELISM = 8;
+    private static final int DEFAULT_QUEUE_SIZE = 4;
 
     private static BlobStore blobStore;
     private static String bucket;
 
-    void onStart(@Observes StartupEvent ev) {
-        blobStore = BenchmarkStorageUtil.setupStorage();
+    void onStart(@Observes StartupEvent ev, BlobStore sharedBlobStore) {
+        blobStore = sharedBlobStore;
         bucket = System.getenv("STORAGE_BUCKET");
     }
 
-    public static class FunInput {
+    public static class FunInput implements RecordingRequest {
+        // a negative height or width keeps the aspect ratio, as in Image.getScaledInstance()
         public int height;
         public int width;
         public String file;
         public String bucket;
         public boolean debug;
+        public boolean jfr;
+        // "box", "bilinear" (default) or "lanczos", or "awt" for Image.getScaledInstance()
+        public String filter;
+        // decode at a fraction of the source resolution close to the target size (default true)
+        public Boolean subsample;
+        // optional region of the source to resize: x, y, width, height
+        public List<Integer> crop;
+        // JPEG quality of the thumbnail, 0.0 to 1.0 (default 0.75)
+        public Float quality;
+        // several renditions from one decode; replaces width and height
+        public List<Size> sizes;
+        // resize every image below input/<prefix> instead of file, see ThumbnailPipeline
+        public String prefix;
+        // download and upload workers of the prefix mode (default 8)
+        public int parallelism;
+        // images held between two stages of the prefix mode (default 4)
+        public int queue_size;
+
+        @Override
+        public boolean jfr() {
+            return jfr;
+        }
+
+        @Override
+        public String bucket() {
+            return bucket;
+        }
     }
     
+    public static class Size {
+        public int width;
+        public int height;
+    }
+
     @Funq
     @BenchmarkWrapper
     public Map<String, Object> thumbnailer(FunInput input) throws Exception {
         Map<String, Object> retVal = new LinkedHashMap<>();
-        if (input == null || (input.bucket == null && bucket == null) || input.height == 0 || input.width == 0 || input.file == null) {
+        if (input == null || (input.bucket == null && bucket == null) || (input.file == null && input.prefix == null)
+                || (input.sizes == null && (input.height == 0 || input.width == 0))) {
             retVal.put("message", "ERROR: Thumbnailer unable to run. file, height, width and bucket need to be set.");
             return retVal;
         }
+        if (input.prefix != null && (input.sizes != null || input.crop != null)) {
+            retVal.put("message", "ERROR: Thumbnailer unable to run. prefix supports height and width only.");
+            return retVal;
+        }
+        if (input.sizes != null && (input.sizes.isEmpty() || input.sizes.stream().anyMatch(size -> size.width <= 0 || size.height <= 0))) {
+            retVal.put("message", "ERROR: Thumbnailer unable to run. sizes need a positive width and height each.");
+            return retVal;
+        }
+        if (input.filter != null && !"awt".equals(input.filter) && !Resampler.Filter.exists(input.filter)) {
+            retVal.put("message", "ERROR: Thumbnailer unable to run. filter needs to be box, bilinear, lanczos or awt.");
+            return retVal;
+        }
+        if (input.crop != null && input.crop.size() != 4) {
+            retVal.put("message", "ERROR: Thumbnailer unable to run. crop needs to be x, y, width and height.");
+            return retVal;
+        }
         if (input.bucket == null)
             input.bucket = bucket;
 
+        if (input.prefix != null) {
+            return resize_prefix(input, retVal);
+        }
+
         String key = "input/" + input.file.replaceAll(" ", "+");
 
-        long download_begin = System.nanoTime();
-        InputStream img = download_stream(input.bucket, key);
-        long download_end = System.nanoTime();
+        PhaseTimer phases = PhaseTimer.current();
+        phases.begin(PhaseTimer.DOWNLOAD);
+        Blob blob = download_blob(input.bucket, key);
+        Long content_length = blob.getMetadata().getContentMetadata().getContentLength();
+        long image_size = content_length != null ? content_length : -1L;
+        double download_time = phases.end() / nanosecInSec;
+
+        phases.begin("decode");
+        Rectangle region = input.crop != null ? new Rectangle(input.crop.get(0), input.crop.get(1), input.crop.get(2), input.crop.get(3)) : null;
+        // with several sizes the decoded image has to be large enough for the largest one
+        int decode_width = input.sizes != null ? input.sizes.stream().mapToInt(size -> size.width).max().getAsInt() : input.width;
+        int decode_height = input.sizes != null ? input.sizes.stream().mapToInt(size -> size.height).max().getAsInt() : input.height;
+        ImageDecoder.Decoded decoded;
+        try (InputStream img = blob.getPayload().openStream()) {
+            decoded = ImageDecoder.decode(img, decode_width, decode_height, region, input.subsample == null || input.subsample);
+        }
+        BufferedImage bimg = decoded.image();
+        double decode_time = phases.end() / nanosecInSec;
+
+        if (input.sizes != null) {
+            phases.begin(PhaseTimer.COMPUTE);
+            List<Map<String, Object>> renditions = resize_all(input, key, bimg);
+            double render_time = phases.end() / nanosecInSec;
+
+            retVal.put("measurement", Map.of("download_time", download_time,
+                                        "download_size", image_size,
+                                        "decode_time", decode_time,
+                                        "render_time", render_time,
+                                        "source_width", decoded.sourceWidth(),
+                                        "source_height", decoded.sourceHeight(),
+                                        "subsampling", decoded.subsampling()));
+            retVal.put("sizes", renditions);
+            return retVal;
+        }
 
-        BufferedImage bimg = ImageIO.read(img);
-        long image_size = len(bimg);
-        long process_begin = System.nanoTime();
-        BufferedImage resized = resize_image(bimg, input.width, input.height);
-        long resized_size = len(resized);
-        long process_end = System.nanoTime();
+        phases.begin(PhaseTimer.COMPUTE);
+        BufferedImage resized = resize_image(bimg, input.width, input.height, input.filter != null ? input.filter : DEFAULT_FILTER);
+        ImageEncoder.Encoded encoded = ImageEncoder.encode(resized, input.quality != null ? input.quality : ImageEncoder.DEFAULT_QUALITY);
+        long resized_size = encoded.length();
+        double process_time = phases.end() / nanosecInSec;
 
-        long upload_begin = System.nanoTime();
-        long upload_end   = upload_begin;
+        double upload_time = 0.0;
         File f = new File(key);
         String out_key = "resized-" + f.getName();
         String key_name = "";
         if(input.debug) {
-            key_name = upload_stream(input.bucket, "output/" + out_key, resized, resized_size);
-            upload_end = System.nanoTime();
+            phases.begin(PhaseTimer.UPLOAD);
+            key_name = upload_stream(input.bucket, "output/" + out_key, encoded);
+            upload_time = phases.end() / nanosecInSec;
         }
 
-        double download_time = (download_end - download_begin) / nanosecInSec;
-        double upload_time   = (upload_end - upload_begin) / nanosecInSec;
-        double process_time   = (process_end - process_begin) / nanosecInSec;
-
         retVal.put("measurement", Map.of("download_time", download_time,
                                     "download_size", image_size,
                                     "upload_time", upload_time,
                                     "upload_size", resized_size,
-                                    "compute_time", process_time));
+                                    "compute_time", process_time,
+                                    "decode_time", decode_time,
+                                    "source_width", decoded.sourceWidth(),
+                                    "source_height", decoded.sourceHeight(),
+                                    "subsampling", decoded.subsampling()));
         retVal.put("output", Map.of("bucket", input.bucket,
                                     "key", key_name));
         return retVal;
     }
 
+    /*
+     * Resizes to all sizes, largest first. Each size is resized from the previous rendition if that is
+     * at least as large in both dimensions, and from the decoded image otherwise. While the next size is
+     * resized, every rendition is encoded and, with debug, uploaded on its own virtual thread.
+     * Returns the timings of every size in the order of the input.
+     */
+    private List<Map<String, Object>> resize_all(FunInput input, String key, BufferedImage bimg) throws Exception {
+        String filter = input.filter != null ? input.filter : DEFAULT_FILTER;
+        float quality = input.quality != null ? input.quality : ImageEncoder.DEFAULT_QUALITY;
+        String name = new File(key).getName();
+
+        List<Size> sizes = new ArrayList<>(input.sizes);
+        sizes.sort(Comparator.comparingLong((Size size) -> (long) size.width * size.height).reversed());
+        Map<Size, Future<Map<String, Object>>> results = new IdentityHashMap<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            BufferedImage previous = null;
+            for (Size size : sizes) {
+                boolean chained = previous != null && previous.getWidth() >= size.width && previous.getHeight() >= size.height;
+                BufferedImage source = chained ? previous : bimg;
+                long begin = System.nanoTime();
+                BufferedImage resized = resize_image(source, size.width, size.height, filter);
+                double resize_time = (System.nanoTime() - begin) / nanosecInSec;
+                previous = resized;
+
+                String source_name = chained ? source.getWidth() + "x" + source.getHeight() : "decoded";
+                String out_key = "output/resized-" + size.width + "x" + size.height + "-" + name;
+                results.put(size, executor.submit(() -> {
+                    long encode_begin = System.nanoTime();
+                    ImageEncoder.Encoded encoded = ImageEncoder.encode(resized, quality);
+                    double encode_time = (System.nanoTime() - encode_begin) / nanosecInSec;
+
+                    double upload_time = 0.0;
+                    String key_name = "";
+                    if (input.debug) {
+                        long upload_begin = System.nanoTime();
+                        key_name = upload_stream(input.bucket, out_key, encoded);
+                        upload_time = (System.nanoTime() - upload_begin) / nanosecInSec;
+                    }
+                    return Map.of("width", size.width,
+                                  "height", size.height,
+                                  "source", source_name,
+                                  "resize_time", resize_time,
+                                  "encode_time", encode_time,
+                                  "upload_time", upload_time,
+                                  "upload_size", (long) encoded.length(),
+                                  "key", key_name);
+                }));
+            }
+        }
+
+        List<Map<String, Object>> renditions = new ArrayList<>();
+        for (Size size : input.sizes) {
+            try {
+                renditions.add(results.get(size).get());
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception cause ? cause : e;
+            }
+        }
+        return renditions;
+    }
+
+    /*
+     * Resizes every image below the prefix in one invocation, through the bounded pipeline of
+     * ThumbnailPipeline. The thumbnails are uploaded with debug only, like in the single image mode.
+     */
+    private Map<String, Object> resize_prefix(FunInput input, Map<String, Object> retVal) throws Exception {
+        PhaseTimer phases = PhaseTimer.current();
+        phases.begin(PhaseTimer.SETUP);
+        List<String> keys = new ArrayList<>();
+        for (StorageMetadata metadata : BlobLister.list(blobStore, input.bucket, "input/" + input.prefix)) {
+            if (metadata.getType() == StorageType.BLOB) {
+                keys.add(metadata.getName());
+            }
+        }
+        phases.end();
+        if (keys.isEmpty()) {
+            retVal.put("message", "ERROR: No images found below " + input.bucket + "/input/" + input.prefix);
+            return retVal;
+        }
+
+        ThumbnailPipeline pipeline = new ThumbnailPipeline(this, blobStore, input,
+                input.parallelism > 0 ? input.parallelism : DEFAULT_PARALLELISM,
+                Runtime.getRuntime().availableProcessors(),
+                input.queue_size > 0 ? input.queue_size : DEFAULT_QUEUE_SIZE);
+        phases.begin(PhaseTimer.COMPUTE);
+        Map<String, Object> stats = pipeline.run(keys);
+        phases.end();
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> stages = (Map<String, Object>) stats.remove("stages");
+        retVal.put("measurement", stats);
+        retVal.put("stages", stages);
+        return retVal;
+    }
+
+    public BufferedImage resize_image(BufferedImage bimg, int w, int h, String filter) {
+        if ("awt".equals(filter)) {
+            return resize_image(bimg, w, h);
+        }
+        return Resampler.resize(bimg, w, h, Resampler.Filter.of(filter));
+    }
+
     public BufferedImage resize_image(BufferedImage bimg, int w, int h) {
         Image thumbnail = bimg.getScaledInstance(w, h, Image.SCALE_DEFAULT);
         BufferedImage ret_image = new BufferedImage(thumbnail.getWidth(null), thumbnail.getHeight(null), BufferedImage.TYPE_INT_RGB);
@@ -97,26 +297,16 @@ public class Thumbnailer {
         return ret_image;
     }
 
-    private long len(BufferedImage img) throws IOException {
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        ImageIO.write(img, "jpg", out);
-        out.flush();
-        byte[] image_bytes = out.toByteArray();
-        out.close();
-
-        return image_bytes.length;
-    }
-
-    private InputStream download_stream(String bucket, String file) throws IOException {
-        return blobStore.getBlob(bucket, file).getPayload().openStream();
+    private Blob download_blob(String bucket, String file) throws IOException {
+        Blob blob = blobStore.getBlob(bucket, file);
+        if (blob == null)
+            throw new FileNotFoundException("ERROR: Bucket or File not found: " + bucket + "/" + file);
+        return blob;
     }
     
-    private String upload_stream(String bucket, String file, BufferedImage bytes_data, long contentLength) throws IOException {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        ImageIO.write(bytes_data, "jpg", baos);
-        ByteArrayInputStream bais = new ByteArrayInputStream(baos.toByteArray());
-        InputStreamPayload payload = Payloads.newInputStreamPayload(bais);
-        payload.getContentMetadata().setContentLength(contentLength);
+    private String upload_stream(String bucket, String file, ImageEncoder.Encoded encoded) throws IOException {
+        Payload payload = Payloads.newByteSourcePayload(encoded.bytes());
+        payload.getContentMetadata().setContentLength((long) encoded.length());
         String key = String.join("/", file);
         blobStore.putBlob(bucket, blobStore.blobBuilder(key).payload(payload).build());
 
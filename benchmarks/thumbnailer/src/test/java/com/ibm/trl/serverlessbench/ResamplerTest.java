@@ -0,0 +1,77 @@
+package com.ibm.trl.serverlessbench;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+
+import org.junit.jupiter.api.Test;
+
+class ResamplerTest {
+
+    private static BufferedImage filled(int width, int height, int type, int rgb) {
+        BufferedImage image = new BufferedImage(width, height, type);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, rgb);
+            }
+        }
+        return image;
+    }
+
+    @Test
+    void positiveSizesAreKept() {
+        assertEquals(new Dimension(100, 30), Resampler.targetSize(640, 480, 100, 30));
+    }
+
+    @Test
+    void negativeSizeKeepsTheAspectRatio() {
+        assertEquals(new Dimension(160, 120), Resampler.targetSize(640, 480, 160, -1));
+        assertEquals(new Dimension(160, 120), Resampler.targetSize(640, 480, -1, 120));
+        assertEquals(new Dimension(50, 1), Resampler.targetSize(10_000, 10, 50, -1));
+        assertEquals(new Dimension(640, 480), Resampler.targetSize(640, 480, -1, -5));
+    }
+
+    @Test
+    void zeroSizeIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> Resampler.targetSize(640, 480, 0, 100));
+        assertThrows(IllegalArgumentException.class, () -> Resampler.targetSize(640, 480, 100, 0));
+    }
+
+    @Test
+    void filtersAreLookedUpIgnoringCase() {
+        assertEquals(Resampler.Filter.LANCZOS, Resampler.Filter.of("Lanczos"));
+        assertTrue(Resampler.Filter.exists("box"));
+        assertTrue(Resampler.Filter.exists("BILINEAR"));
+        assertFalse(Resampler.Filter.exists("awt"));
+        assertFalse(Resampler.Filter.exists("bicubic"));
+    }
+
+    @Test
+    void everyFilterKeepsAUniformColor() {
+        int rgb = 0x336699;
+        for (int type : new int[] {BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_3BYTE_BGR}) {
+            BufferedImage source = filled(517, 301, type, rgb);
+            for (Resampler.Filter filter : Resampler.Filter.values()) {
+                BufferedImage resized = Resampler.resize(source, 64, -1, filter);
+                assertEquals(64, resized.getWidth(), filter.name());
+                assertEquals(37, resized.getHeight(), filter.name());
+                for (int y = 0; y < resized.getHeight(); y++) {
+                    for (int x = 0; x < resized.getWidth(); x++) {
+                        assertEquals(rgb, resized.getRGB(x, y) & 0xffffff, filter + " at " + x + "," + y);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void upscalingProducesTheRequestedSize() {
+        BufferedImage resized = Resampler.resize(filled(10, 20, BufferedImage.TYPE_INT_RGB, 0), -1, 50, Resampler.Filter.BILINEAR);
+        assertEquals(25, resized.getWidth());
+        assertEquals(50, resized.getHeight());
+    }
+}
@@ -0,0 +1,213 @@
+package com.ibm.trl.serverlessbench;
+
+import com.google.common.io.ByteSource;
+import com.ibm.trl.serverlessbench.wrapper.LatencyHistogram;
+import org.jboss.logging.Logger;
+import org.jclouds.blobstore.BlobStore;
+import org.jclouds.blobstore.domain.Blob;
+import org.jclouds.blobstore.options.GetOptions;
+import org.jclouds.io.Payload;
+import org.jclouds.io.Payloads;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Sweep mode of Uploader: runs the same set of GET (or PUT) requests once per combination of
+ * concurrency and part size on virtual threads and reports the aggregate throughput and the
+ * latency percentiles of the single requests for every combination.
+ *
+ * For GET, a part size splits every object into ranged GETs (0 reads whole objects).
+ * For PUT, every request uploads a new object of the part size (0 uses the size of each input object)
+ * below output/sweep-<uuid>/, which is removed after each setting.
+ *
+ * Concurrencies are capped at the connection pool size of the BlobStore; beyond it, requests only wait
+ * for a free connection and the sweep would measure the pool instead of the storage.
+ */
+class StorageSweep {
+    private static final double nanosecInSec = 1_000_000_000.0;
+
+    private static final Logger log = Logger.getLogger(StorageSweep.class);
+
+    static final List<Integer> DEFAULT_CONCURRENCY = List.of(1, 2, 4, 8, 16, 32);
+    static final List<Long> DEFAULT_PART_SIZES = List.of(0L);
+
+    // a setting is saturated once its throughput reaches this fraction of the best one with the same part size
+    private static final double SATURATION = 0.9;
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final int ZEROS_SIZE = 1024 * 1024;
+    private static final ByteSource ZEROS = ByteSource.wrap(new byte[ZEROS_SIZE]);
+
+    record Target(String key, long size) {
+    }
+
+    private record Request(String key, long offset, long length) {
+    }
+
+    private final BlobStore blobStore;
+    private final String bucket;
+    private final int poolSize;
+
+    StorageSweep(BlobStore blobStore, String bucket, int poolSize) {
+        this.blobStore = blobStore;
+        this.bucket = bucket;
+        this.poolSize = Math.max(1, poolSize);
+    }
+
+    /*
+     * concurrencies must be in ascending order.
+     */
+    Map<String, Object> run(List<Target> targets, boolean put, List<Integer> requestedConcurrencies, List<Long> partSizes, int rounds) {
+        List<Integer> concurrencies = new ArrayList<>();
+        for (int concurrency : requestedConcurrencies) {
+            int capped = Math.min(Math.max(1, concurrency), poolSize);
+            if (!concurrencies.contains(capped)) {
+                concurrencies.add(capped);
+            }
+        }
+
+        List<Map<String, Object>> settings = new ArrayList<>();
+        List<Map<String, Object>> saturation = new ArrayList<>();
+        for (long partSize : partSizes) {
+            List<Request> requests = requests(targets, put, partSize, Math.max(1, rounds));
+            List<Map<String, Object>> results = new ArrayList<>();
+            for (int concurrency : concurrencies) {
+                Map<String, Object> result = runSetting(requests, put, concurrency);
+                result.put("part_size", partSize);
+                results.add(result);
+            }
+            settings.addAll(results);
+            saturation.add(saturation(results, partSize));
+        }
+
+        Map<String, Object> retVal = new LinkedHashMap<>();
+        retVal.put("operation", put ? "put" : "get");
+        retVal.put("objects", targets.size());
+        retVal.put("pool_size", poolSize);
+        retVal.put("settings", settings);
+        retVal.put("saturation", saturation);
+        return retVal;
+    }
+
+    private static List<Request> requests(List<Target> targets, boolean put, long partSize, int rounds) {
+        List<Request> requests = new ArrayList<>();
+        for (int round = 0; round < rounds; round++) {
+            for (Target target : targets) {
+                if (put) {
+                    requests.add(new Request(target.key(), 0L, partSize > 0 ? partSize : Math.max(0L, target.size())));
+                } else if (partSize <= 0 || target.size() <= 0) {
+                    requests.add(new Request(target.key(), 0L, -1L));
+                } else {
+                    for (long offset = 0; offset < target.size(); offset += partSize) {
+                        requests.add(new Request(target.key(), offset, Math.min(partSize, target.size() - offset)));
+                    }
+                }
+            }
+        }
+        return requests;
+    }
+
+    private Map<String, Object> runSetting(List<Request> requests, boolean put, int concurrency) {
+        String outPrefix = "output/sweep-" + UUID.randomUUID() + "/";
+        LatencyHistogram latency = new LatencyHistogram();
+        LongAdder bytes = new LongAdder();
+        LongAdder errors = new LongAdder();
+        AtomicInteger next = new AtomicInteger();
+
+        long begin = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < concurrency; i++) {
+                executor.execute(() -> {
+                    byte[] buffer = new byte[BUFFER_SIZE];
+                    int index;
+                    while ((index = next.getAndIncrement()) < requests.size()) {
+                        Request request = requests.get(index);
+                        long requestBegin = System.nanoTime();
+                        try {
+                            bytes.add(put ? put(outPrefix + index, request.length()) : get(request, buffer));
+                            latency.recordNanos(System.nanoTime() - requestBegin);
+                        } catch (Exception e) {
+                            errors.increment();
+                            log.debug("Request for " + request.key() + " failed: " + e);
+                        }
+                    }
+                });
+            }
+        }
+        long elapsed = System.nanoTime() - begin;
+
+        if (put) {
+            List<String> names = new ArrayList<>();
+            for (int i = 0; i < requests.size(); i++) {
+                names.add(outPrefix + i);
+            }
+            blobStore.removeBlobs(bucket, names);
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("concurrency", concurrency);
+        result.put("requests", requests.size());
+        result.put("errors", errors.sum());
+        result.put("bytes", bytes.sum());
+        result.put("time", elapsed / nanosecInSec);
+        result.put("throughput", bytes.sum() / 1_000_000.0 / (elapsed / nanosecInSec));
+        result.put("latency", latency.toMap());
+        return result;
+    }
+
+    private long get(Request request, byte[] buffer) throws Exception {
+        Blob blob = request.length() < 0
+                ? blobStore.getBlob(bucket, request.key())
+                : blobStore.getBlob(bucket, request.key(), GetOptions.Builder.range(request.offset(), request.offset() + request.length() - 1));
+        if (blob == null)
+            throw new Exception("ERROR: Bucket or File not found.");
+
+        long received = 0;
+        try (InputStream is = blob.getPayload().openStream()) {
+            int bytesRead;
+            while ((bytesRead = is.read(buffer)) != -1) {
+                received += bytesRead;
+            }
+        }
+        return received;
+    }
+
+    private long put(String key, long length) {
+        int copies = (int) ((length + ZEROS_SIZE - 1) / ZEROS_SIZE);
+        ByteSource content = ByteSource.concat(Collections.nCopies(copies, ZEROS)).slice(0, length);
+        Payload payload = Payloads.newByteSourcePayload(content);
+        payload.getContentMetadata().setContentLength(length);
+        blobStore.putBlob(bucket, blobStore.blobBuilder(key).payload(payload).build());
+        return length;
+    }
+
+    /*
+     * The lowest concurrency whose throughput is within SATURATION of the best one for this part size.
+     */
+    private static Map<String, Object> saturation(List<Map<String, Object>> results, long partSize) {
+        double best = 0.0;
+        for (Map<String, Object> result : results) {
+            best = Math.max(best, (Double) result.get("throughput"));
+        }
+        Map<String, Object> saturation = new LinkedHashMap<>();
+        saturation.put("part_size", partSize);
+        saturation.put("max_throughput", best);
+        for (Map<String, Object> result : results) {
+            if ((Double) result.get("throughput") >= SATURATION * best) {
+                saturation.put("concurrency", result.get("concurrency"));
+                saturation.put("throughput", result.get("throughput"));
+                break;
+            }
+        }
+        return saturation;
+    }
+}
@@ -2,6 +2,12 @@ package com.ibm.trl.serverlessbench;
 
 import com.ibm.trl.serverlessbench.wrapper.BenchmarkStorageUtil;
 import com.ibm.trl.serverlessbench.wrapper.BenchmarkWrapper;
+import com.ibm.trl.serverlessbench.wrapper.BlobUploader;
+import com.ibm.trl.serverlessbench.wrapper.BoundedPipe;
+import com.ibm.trl.serverlessbench.wrapper.BlobCache;
+import com.ibm.trl.serverlessbench.wrapper.BlobLister;
+import com.ibm.trl.serverlessbench.wrapper.PhaseTimer;
+import com.ibm.trl.serverlessbench.wrapper.RecordingRequest;
 import io.quarkus.runtime.StartupEvent;
 import jakarta.enterprise.event.Observes;
 import org.jboss.logging.Logger;
@@ -9,8 +15,10 @@ import org.jboss.logging.Logger;
 import java.io.File;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.UUID;
 import java.util.Map;
 
@@ -18,50 +26,94 @@ import io.quarkus.funqy.Funq;
 
 import org.jclouds.blobstore.BlobStore;
 import org.jclouds.blobstore.domain.Blob;
+import org.jclouds.blobstore.domain.BlobMetadata;
+import org.jclouds.blobstore.domain.StorageMetadata;
+import org.jclouds.io.Payload;
+import org.jclouds.io.Payloads;
 
 public class Uploader {
     private static final double nanosecInSec = 1_000_000_000.0;
 
     private static final Logger log = Logger.getLogger(Uploader.class);
+    private static final int DEFAULT_BUFFER_SIZE = 8 * 1024 * 1024;
 
     private static BlobStore blobStore;
     private static String bucket;
 
-    void onStart(@Observes StartupEvent ev) {
-        blobStore = BenchmarkStorageUtil.setupStorage();
+    void onStart(@Observes StartupEvent ev, BlobStore sharedBlobStore) {
+        blobStore = sharedBlobStore;
         bucket = System.getenv("STORAGE_BUCKET");
     }
     
-    public static class FunInput {
+    public static class FunInput implements RecordingRequest {
         public String file;
         public String bucket;
         public boolean debug;
+        public boolean jfr;
+        // "file" (default) stages the blob in /tmp, "stream" pipes the download into the upload,
+        // "sweep" measures storage throughput over a range of concurrencies and part sizes
+        public String mode;
+        public int buffer_size;
+        // sweep mode: the objects below input/ are given as keys or prefix
+        public List<String> keys;
+        public String prefix;
+        public List<Integer> concurrency;
+        public List<Long> part_sizes;
+        public int rounds;
+        public String operation;
+
+        @Override
+        public boolean jfr() {
+            return jfr;
+        }
+
+        @Override
+        public String bucket() {
+            return bucket;
+        }
     }
 
     @Funq
     @BenchmarkWrapper
     public Map<String, Object> uploader(FunInput input) throws Exception {
         Map<String, Object> retVal = new LinkedHashMap<>();
-        if (input == null || (input.bucket == null && bucket == null) || input.file == null) {
+        if (input == null || (input.bucket == null && bucket == null)
+                || (input.file == null && !("sweep".equals(input.mode) && (input.keys != null || input.prefix != null)))) {
             retVal.put("message", "ERROR: Uploader unable to run. file and bucket need to be set.");
             return retVal;
         }
         if (input.bucket == null)
             input.bucket = bucket;
 
+        if ("stream".equals(input.mode)) {
+            return streamFile(input, retVal);
+        }
+        if ("sweep".equals(input.mode)) {
+            return sweep(input, retVal);
+        }
+
+        PhaseTimer phases = PhaseTimer.current();
         File filePath = new File(String.format("/tmp/uploader-%s-%s", UUID.randomUUID(), input.file));
-        long downloadStartTime = System.nanoTime();
-        downloadFile(input.bucket, "input/" + input.file, filePath.toString());
-        long downloadStopTime = System.nanoTime();
+        phases.begin(PhaseTimer.DOWNLOAD);
+        Map<String, Object> download = downloadFile(input.bucket, "input/" + input.file, filePath.toString());
+        double downloadTime = phases.end() / nanosecInSec;
         long downloadSize = filePath.length();
 
-        long uploadStartTime = System.nanoTime();
-        uploadFile(input.bucket, "output/" + input.file, filePath.toString());
-        long uploadStopTime = System.nanoTime();
-
-        retVal.put("measurement", Map.of("download_time", (downloadStopTime - downloadStartTime) / nanosecInSec,
-                                         "upload_time", (uploadStopTime - uploadStartTime) / nanosecInSec,
-                                         "download_size", Long.toString(downloadSize)));
+        phases.begin(PhaseTimer.UPLOAD);
+        Map<String, Object> upload = uploadFile(input.bucket, "output/" + input.file, filePath.toString());
+        double uploadTime = phases.end() / nanosecInSec;
+
+        retVal.put("measurement", Map.of("download_time", downloadTime,
+                                         "upload_time", uploadTime,
+                                         "download_size", Long.toString(downloadSize),
+                                         "download_parts", download.get("parts"),
+                                         "download_parallelism", download.get("parallelism"),
+                                         "download_throughput", download.get("throughput"),
+                                         "upload_throughput", upload.get("throughput"),
+                                         "upload_parts", upload.get("parts"),
+                                         "upload_part_times", upload.get("part_times")));
+        retVal.put("cache", Map.of("hit", download.get("hit"),
+                                   "bytes_saved", download.get("bytes_saved")));
         if (input.debug) {
             retVal.put("output", Map.of( "bucket", input.bucket,
                                         "key", "output/" + input.file));
@@ -73,30 +125,125 @@ public class Uploader {
         return retVal;
     }
 
-    private void downloadFile(String bucket, String key, String filePath) throws Exception {
+    /*
+     * Pipes the GET stream into the PUT through a bounded ring buffer, so that download and upload
+     * overlap and the data never touches disk.
+     */
+    private Map<String, Object> streamFile(FunInput input, Map<String, Object> retVal) throws Exception {
+        String key = "input/" + input.file;
+        String outKey = "output/" + input.file;
+        log.debug("Streaming " + key + " to " + outKey + " in bucket " + input.bucket + ".");
+        BoundedPipe pipe = new BoundedPipe(input.buffer_size > 0 ? input.buffer_size : DEFAULT_BUFFER_SIZE);
+
+        long begin = System.nanoTime();
+        Blob blob = blobStore.getBlob(input.bucket, key);
+        if (blob == null)
+            throw new Exception("ERROR: Bucket or File not found.");
+        Long size = blob.getMetadata().getContentMetadata().getContentLength();
+        if (size == null)
+            throw new Exception("ERROR: Size of " + key + " is unknown.");
+
+        long[] downloadEnd = new long[1];
+        Throwable[] downloadFailure = new Throwable[1];
+        Thread downloader = Thread.ofVirtual().start(() -> {
+            try (InputStream is = blob.getPayload().openStream();
+                 OutputStream os = pipe.output()) {
+                is.transferTo(os);
+            } catch (Throwable t) {
+                downloadFailure[0] = t;
+                pipe.fail(t);
+            }
+            downloadEnd[0] = System.nanoTime();
+        });
+
+        long uploadBegin = System.nanoTime();
+        try (InputStream is = pipe.input()) {
+            Payload payload = Payloads.newInputStreamPayload(is);
+            payload.getContentMetadata().setContentLength(size);
+            blobStore.putBlob(input.bucket, blobStore.blobBuilder(outKey).payload(payload).build());
+        } catch (Exception e) {
+            pipe.fail(e);
+            throw e;
+        } finally {
+            downloader.join();
+        }
+        long uploadEnd = System.nanoTime();
+        if (downloadFailure[0] != null) {
+            throw new Exception("ERROR: Download of " + key + " failed.", downloadFailure[0]);
+        }
+
+        long downloadNanos = downloadEnd[0] - begin;
+        long uploadNanos = uploadEnd - uploadBegin;
+        long overlapNanos = Math.max(0L, Math.min(downloadEnd[0], uploadEnd) - Math.max(begin, uploadBegin));
+        PhaseTimer phases = PhaseTimer.current();
+        phases.add(PhaseTimer.DOWNLOAD, downloadNanos);
+        phases.add(PhaseTimer.UPLOAD, uploadNanos);
+
+        retVal.put("measurement", Map.of("download_time", downloadNanos / nanosecInSec,
+                                         "upload_time", uploadNanos / nanosecInSec,
+                                         "overlap_time", overlapNanos / nanosecInSec,
+                                         "stream_time", (uploadEnd - begin) / nanosecInSec,
+                                         "download_size", Long.toString(size),
+                                         "buffer_size", pipe.capacity(),
+                                         "download_wait_time", pipe.writerWaitNanos() / nanosecInSec,
+                                         "upload_wait_time", pipe.readerWaitNanos() / nanosecInSec));
+        if (input.debug) {
+            retVal.put("output", Map.of( "bucket", input.bucket,
+                                        "key", outKey));
+        } else {
+            deleteFile(input.bucket, outKey);
+        }
+        return retVal;
+    }
+
+    private Map<String, Object> sweep(FunInput input, Map<String, Object> retVal) throws Exception {
+        List<StorageSweep.Target> targets = new ArrayList<>();
+        if (input.prefix != null) {
+            for (StorageMetadata metadata : BlobLister.list(blobStore, input.bucket, "input/" + input.prefix)) {
+                targets.add(new StorageSweep.Target(metadata.getName(), metadata.getSize() != null ? metadata.getSize() : -1L));
+            }
+        } else {
+            for (String key : input.keys != null ? input.keys : List.of(input.file)) {
+                BlobMetadata metadata = blobStore.blobMetadata(input.bucket, "input/" + key);
+                if (metadata == null)
+                    throw new Exception("ERROR: Bucket or File not found.");
+                Long size = metadata.getContentMetadata().getContentLength();
+                targets.add(new StorageSweep.Target(metadata.getName(), size != null ? size : -1L));
+            }
+        }
+        if (targets.isEmpty()) {
+            retVal.put("message", "ERROR: Uploader found no objects to sweep.");
+            return retVal;
+        }
+
+        List<Integer> concurrency = new ArrayList<>(input.concurrency != null ? input.concurrency : StorageSweep.DEFAULT_CONCURRENCY);
+        Collections.sort(concurrency);
+        List<Long> partSizes = input.part_sizes != null ? input.part_sizes : StorageSweep.DEFAULT_PART_SIZES;
+
+        PhaseTimer phases = PhaseTimer.current();
+        phases.begin(PhaseTimer.COMPUTE);
+        Map<String, Object> sweep = new StorageSweep(blobStore, input.bucket, BenchmarkStorageUtil.poolSize())
+                .run(targets, "put".equals(input.operation), concurrency, partSizes, input.rounds);
+        double sweepTime = phases.end() / nanosecInSec;
+
+        sweep.put("sweep_time", sweepTime);
+        retVal.put("measurement", sweep);
+        return retVal;
+    }
+
+    private Map<String, Object> downloadFile(String bucket, String key, String filePath) throws Exception {
         log.debug("Downloading " + filePath + " as " + key + " from bucket " + bucket + ".");
         File theFile = new File(filePath);
         File theDir = theFile.getParentFile();
         if (!theDir.exists())
             theDir.mkdirs();
 
-        Blob blob = blobStore.getBlob(bucket, key);
-        if (blob == null)
-            throw new Exception("ERROR: Bucket or File not found.");
-
-        try (InputStream is = blob.getPayload().openStream();
-             OutputStream os = new FileOutputStream(theFile)) {
-            byte[] buffer = new byte[8192];
-            int bytesRead;
-            while ((bytesRead = is.read(buffer)) != -1) {
-                os.write(buffer, 0, bytesRead);
-            }
-        }
+        return BlobCache.fetch(blobStore, bucket, key, theFile.toPath());
     }
 
-    private void uploadFile(String bucket, String key, String filePath) {
+    private Map<String, Object> uploadFile(String bucket, String key, String filePath) throws Exception {
         log.debug("Uploading " + filePath + " as " + key + " to bucket " + bucket + ".");
-        blobStore.putBlob(bucket, blobStore.blobBuilder(key).payload(new File(filePath)).build());
+        return BlobUploader.upload(blobStore, bucket, key, new File(filePath).toPath());
     }
 
     private void deleteFile(String bucket, String key) {
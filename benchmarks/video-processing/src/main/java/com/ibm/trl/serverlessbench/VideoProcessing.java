@@ -1,12 +1,11 @@
 package com.ibm.trl.serverlessbench;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.nio.file.attribute.PosixFilePermission;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.function.BiFunction;
@@ -15,8 +14,11 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 
-import com.ibm.trl.serverlessbench.wrapper.BenchmarkStorageUtil;
 import com.ibm.trl.serverlessbench.wrapper.BenchmarkWrapper;
+import com.ibm.trl.serverlessbench.wrapper.BlobUploader;
+import com.ibm.trl.serverlessbench.wrapper.BlobCache;
+import com.ibm.trl.serverlessbench.wrapper.PhaseTimer;
+import com.ibm.trl.serverlessbench.wrapper.RecordingRequest;
 
 import io.quarkus.funqy.Funq;
 import io.quarkus.runtime.StartupEvent;
@@ -41,8 +43,8 @@ public class VideoProcessing {
     private static String bucket;
 
 
-    void onStart(@Observes StartupEvent ev) {
-        blobStore = BenchmarkStorageUtil.setupStorage();
+    void onStart(@Observes StartupEvent ev, BlobStore sharedBlobStore) {
+        blobStore = sharedBlobStore;
         bucket = System.getenv("STORAGE_BUCKET");
 
         // ffmpeg = new FFmpeg(); // initialize FFmpeg from PATH or FFMPEG env var
@@ -58,12 +60,23 @@ public class VideoProcessing {
         }
     }
 
-    public static class FunInput {
+    public static class FunInput implements RecordingRequest {
         public String file;
         public int duration;
         public String operation;
         public String bucket;
         public boolean debug;
+        public boolean jfr;
+
+        @Override
+        public boolean jfr() {
+            return jfr;
+        }
+
+        @Override
+        public String bucket() {
+            return bucket;
+        }
     }
 
     @Funq("video-processing")
@@ -80,19 +93,20 @@ public class VideoProcessing {
         String key = input.file;
         String download_path = String.format("/tmp/%s", key);
 
-        long download_begin = System.nanoTime();
-        download(input.bucket, "input/" + key, download_path);
-        long download_stop = System.nanoTime();
+        PhaseTimer phases = PhaseTimer.current();
+        phases.begin(PhaseTimer.DOWNLOAD);
+        Map<String, Object> download = download(input.bucket, "input/" + key, download_path);
+        double download_time = phases.end() / nanosecInSec;
         double download_size = Files.size(new File(download_path).toPath());
 
-        long process_begin = System.nanoTime();
+        phases.begin(PhaseTimer.COMPUTE);
         String upload_path = operations.get(input.operation).apply(download_path, input.duration);
-        long process_end = System.nanoTime();
+        double compute_time = phases.end() / nanosecInSec;
 
         String out_key = "";
         double output_size = 0d;
-        long upload_begin = 0L;
-        long upload_stop = 0L;
+        double upload_time = 0.0;
+        Map<String, Object> upload = Map.of("parts", 0, "part_times", List.of(), "throughput", 0.0);
 
         if (upload_path != null) {
             File output_file = new File(upload_path);
@@ -101,17 +115,23 @@ public class VideoProcessing {
             if (input.debug) {
                 File f = new File(key);
                 out_key = "output/" + ((f.getParent() != null) ? f.getParent() + "/" : "") + output_file.getName();
-                upload_begin = System.nanoTime();
-                upload(input.bucket, out_key, upload_path);
-                upload_stop = System.nanoTime();
+                phases.begin(PhaseTimer.UPLOAD);
+                upload = upload(input.bucket, out_key, upload_path);
+                upload_time = phases.end() / nanosecInSec;
             }
         }
 
-        retVal.put("measurement", Map.of("download_time", (download_stop - download_begin) / nanosecInSec,
+        retVal.put("measurement", Map.of("download_time", download_time,
                                          "download_size", download_size,
-                                         "upload_time", (upload_stop - upload_begin) / nanosecInSec,
+                                         "download_throughput", download.get("throughput"),
+                                         "upload_time", upload_time,
                                          "output_size", output_size,
-                                         "compute_time", (process_end - process_begin) / nanosecInSec));
+                                         "upload_parts", upload.get("parts"),
+                                         "upload_part_times", upload.get("part_times"),
+                                         "upload_throughput", upload.get("throughput"),
+                                         "compute_time", compute_time));
+        retVal.put("cache", Map.of("hit", download.get("hit"),
+                                   "bytes_saved", download.get("bytes_saved")));
         retVal.put("output", Map.of("bucket", input.bucket,
                                     "key", out_key));
         return retVal;
@@ -207,23 +227,16 @@ public class VideoProcessing {
                                                                                       "extract-gif", to_gif,
                                                                                       "watermark", watermark);
 
-    private void download(String input_bucket, String key, String download_path) throws Exception {
+    private Map<String, Object> download(String input_bucket, String key, String download_path) throws Exception {
         File theFile = new File(download_path);
         File theDir = theFile.getParentFile();
         if (theDir != null && !theDir.exists())
             theDir.mkdirs();
 
-        try (InputStream is = blobStore.getBlob(input_bucket, key).getPayload().openStream();
-             OutputStream os = new FileOutputStream(theFile)) {
-            byte[] buffer = new byte[8192];
-            int bytesRead;
-            while ((bytesRead = is.read(buffer)) != -1) {
-                os.write(buffer, 0, bytesRead);
-            }
-        }
+        return BlobCache.fetch(blobStore, input_bucket, key, theFile.toPath());
     }
 
-    private void upload(String output_bucket, String filename, String upload_path) {
-        blobStore.putBlob(output_bucket, blobStore.blobBuilder(filename).payload(new File(upload_path)).build());
+    private Map<String, Object> upload(String output_bucket, String filename, String upload_path) throws IOException {
+        return BlobUploader.upload(blobStore, output_bucket, filename, Path.of(upload_path));
     }
 }